@@ -0,0 +1,293 @@
+package fa.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import fa.nfa.NFA;
+import fa.nfa.NFABuilder;
+
+/**
+ * Generators for NFA families that are known to be hard for
+ * determinization, closure computation or matching.
+ * Each generator returns the states and transitions as plain arrays
+ * so construction itself can be benchmarked.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+public final class Automata
+{
+    /**
+     * The generated families
+     */
+    public enum Family
+    {
+        /** the n-th symbol from the end is an a, 2^n DFA states */
+        NTH_FROM_LAST,
+        /** n states joined by epsilon transitions, closures of size O(n) */
+        EPSILON_CHAIN,
+        /** n states, two symbols, random transitions with density 0.2 */
+        DENSE_RANDOM,
+        /** n states over an alphabet of 8n symbols */
+        LARGE_ALPHABET;
+
+        /**
+         * @param n the size parameter
+         * @return the automaton of this family with that size
+         */
+        public Spec generate(int n)
+        {
+            switch(this)
+            {
+                case NTH_FROM_LAST:
+                    return nthFromLast(n);
+                case EPSILON_CHAIN:
+                    return epsilonChain(n);
+                case DENSE_RANDOM:
+                    return denseRandom(n, 2, 0.2, 42);
+                default:
+                    return largeAlphabet(n, 8 * n, 42);
+            }
+        }
+    }
+
+    /**
+     * An NFA as arrays, state i is named "q" + i, state 0 is the start
+     */
+    public static final class Spec
+    {
+        public final int states;
+        public final boolean[] finals;
+        public final int[] from;
+        public final char[] on;
+        public final int[] to;
+        public final char[] alphabet;
+
+        Spec(int states, boolean[] finals, int[] from, char[] on, int[] to, char[] alphabet)
+        {
+            this.states = states;
+            this.finals = finals;
+            this.from = from;
+            this.on = on;
+            this.to = to;
+            this.alphabet = alphabet;
+        }
+
+        /**
+         * @return the NFA built through the NFA interface, one call per element
+         */
+        public NFA toNFA()
+        {
+            NFA nfa = new NFA();
+            nfa.addStartState("q0");
+            for(int i = 1; i < states; i++)
+            {
+                nfa.addState("q" + i);
+            }
+            for(int i = 0; i < states; i++)
+            {
+                if(finals[i])
+                {
+                    nfa.addFinalState("q" + i);
+                }
+            }
+            for(int i = 0; i < from.length; i++)
+            {
+                nfa.addTransition("q" + from[i], on[i], "q" + to[i]);
+            }
+            return nfa;
+        }
+
+        /**
+         * @return the NFA built in bulk through NFABuilder
+         */
+        public NFA toNFABuilder()
+        {
+            NFABuilder b = new NFABuilder();
+            b.addStartState("q0");
+            for(int i = 1; i < states; i++)
+            {
+                b.addState("q" + i);
+            }
+            for(int i = 0; i < states; i++)
+            {
+                if(finals[i])
+                {
+                    b.addFinalState("q" + i);
+                }
+            }
+            return b.addTransitions(from, on, to).build();
+        }
+
+        /**
+         * @param count the number of strings
+         * @param length the length of every string
+         * @param seed the random seed
+         * @return random strings over the alphabet
+         */
+        public String[] inputs(int count, int length, long seed)
+        {
+            Random r = new Random(seed);
+            String[] ret = new String[count];
+            char[] buf = new char[length];
+            for(int i = 0; i < count; i++)
+            {
+                for(int j = 0; j < length; j++)
+                {
+                    buf[j] = alphabet[r.nextInt(alphabet.length)];
+                }
+                ret[i] = new String(buf);
+            }
+            return ret;
+        }
+    }
+
+    private Automata()
+    {
+    }
+
+    /**
+     * @param n the position from the end
+     * @return q0 loops on a and b and guesses the a, then n - 1 steps to the final state
+     */
+    public static Spec nthFromLast(int n)
+    {
+        Edges e = new Edges();
+        e.add(0, 'a', 0);
+        e.add(0, 'b', 0);
+        e.add(0, 'a', 1);
+        for(int i = 1; i < n; i++)
+        {
+            e.add(i, 'a', i + 1);
+            e.add(i, 'b', i + 1);
+        }
+        boolean[] finals = new boolean[n + 1];
+        finals[n] = true;
+        return e.spec(n + 1, finals, new char[] {'a', 'b'});
+    }
+
+    /**
+     * @param n the length of the chain
+     * @return every state has an epsilon and an a transition to the next,
+     * and a b transition back to the start
+     */
+    public static Spec epsilonChain(int n)
+    {
+        Edges e = new Edges();
+        for(int i = 0; i < n; i++)
+        {
+            e.add(i, 'e', i + 1);
+            e.add(i, 'a', i + 1);
+            e.add(i + 1, 'b', 0);
+        }
+        boolean[] finals = new boolean[n + 1];
+        finals[n] = true;
+        return e.spec(n + 1, finals, new char[] {'a', 'b'});
+    }
+
+    /**
+     * @param n the number of states
+     * @param k the number of symbols
+     * @param density the probability of each possible transition
+     * @param seed the random seed
+     * @return a random NFA with about a third of its states final
+     */
+    public static Spec denseRandom(int n, int k, double density, long seed)
+    {
+        Random r = new Random(seed);
+        char[] abc = symbols(k);
+        Edges e = new Edges();
+        boolean[] finals = new boolean[n];
+        for(int i = 0; i < n; i++)
+        {
+            finals[i] = r.nextInt(3) == 0;
+            for(int j = 0; j < n; j++)
+            {
+                for(char c : abc)
+                {
+                    if(r.nextDouble() < density)
+                    {
+                        e.add(i, c, j);
+                    }
+                }
+                if(r.nextDouble() < density / 4)
+                {
+                    e.add(i, 'e', j);
+                }
+            }
+        }
+        return e.spec(n, finals, abc);
+    }
+
+    /**
+     * @param n the number of states
+     * @param k the number of symbols
+     * @param seed the random seed
+     * @return every state has two random successors on every symbol
+     */
+    public static Spec largeAlphabet(int n, int k, long seed)
+    {
+        Random r = new Random(seed);
+        char[] abc = symbols(k);
+        Edges e = new Edges();
+        boolean[] finals = new boolean[n];
+        for(int i = 0; i < n; i++)
+        {
+            finals[i] = r.nextInt(4) == 0;
+            for(char c : abc)
+            {
+                e.add(i, c, r.nextInt(n));
+                e.add(i, c, r.nextInt(n));
+            }
+        }
+        return e.spec(n, finals, abc);
+    }
+
+    /**
+     * @param k the number of symbols
+     * @return k distinct symbols, never 'e' which stands for epsilon
+     */
+    private static char[] symbols(int k)
+    {
+        char[] ret = new char[k];
+        char c = 'a';
+        for(int i = 0; i < k; i++)
+        {
+            if(c == 'e')
+            {
+                c++;
+            }
+            ret[i] = c++;
+        }
+        return ret;
+    }
+
+    /**
+     * A growable transition list
+     */
+    private static final class Edges
+    {
+        private int[] from = new int[16];
+        private char[] on = new char[16];
+        private int[] to = new int[16];
+        private int size;
+
+        void add(int f, char c, int t)
+        {
+            if(size == from.length)
+            {
+                from = Arrays.copyOf(from, size * 2);
+                on = Arrays.copyOf(on, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+            }
+            from[size] = f;
+            on[size] = c;
+            to[size] = t;
+            size++;
+        }
+
+        Spec spec(int states, boolean[] finals, char[] alphabet)
+        {
+            return new Spec(states, finals, Arrays.copyOf(from, size), Arrays.copyOf(on, size),
+                    Arrays.copyOf(to, size), alphabet);
+        }
+    }
+}
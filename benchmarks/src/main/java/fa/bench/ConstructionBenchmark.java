@@ -0,0 +1,66 @@
+package fa.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fa.dfa.DFA;
+import fa.nfa.NFA;
+
+/**
+ * Building NFAs from their transitions and printing DFAs.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConstructionBenchmark
+{
+    @Param({"NTH_FROM_LAST", "EPSILON_CHAIN", "DENSE_RANDOM", "LARGE_ALPHABET"})
+    public Automata.Family family;
+
+    @Param({"6", "10", "14"})
+    public int size;
+
+    private Automata.Spec spec;
+    private DFA dfa;
+
+    @Setup(Level.Trial)
+    public void generate()
+    {
+        spec = family.generate(size);
+        dfa = spec.toNFABuilder().getDFA();
+    }
+
+    @Benchmark
+    public NFA addTransition()
+    {
+        return spec.toNFA();
+    }
+
+    @Benchmark
+    public NFA builder()
+    {
+        return spec.toNFABuilder();
+    }
+
+    @Benchmark
+    public String dfaToString()
+    {
+        return dfa.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package fa.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fa.dfa.DFA;
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+/**
+ * Subset construction and epsilon closure over the generated families.
+ * The NFA is rebuilt before every invocation so that nothing derived
+ * from it is cached between calls.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeterminizeBenchmark
+{
+    @Param({"NTH_FROM_LAST", "EPSILON_CHAIN", "DENSE_RANDOM", "LARGE_ALPHABET"})
+    public Automata.Family family;
+
+    @Param({"6", "10", "14"})
+    public int size;
+
+    private Automata.Spec spec;
+    private NFA nfa;
+
+    @Setup(Level.Trial)
+    public void generate()
+    {
+        spec = family.generate(size);
+    }
+
+    @Setup(Level.Invocation)
+    public void build()
+    {
+        nfa = spec.toNFABuilder();
+    }
+
+    @Benchmark
+    public DFA getDFA()
+    {
+        return nfa.getDFA();
+    }
+
+    @Benchmark
+    public DFA getDFAMinimized()
+    {
+        return nfa.getDFA(true);
+    }
+
+    @Benchmark
+    public Object eClosure()
+    {
+        return nfa.eClosure((NFAState) nfa.getStartState());
+    }
+}
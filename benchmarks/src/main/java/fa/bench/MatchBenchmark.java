@@ -0,0 +1,104 @@
+package fa.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fa.dfa.CompiledDFA;
+import fa.dfa.DFA;
+import fa.nfa.LazyDFA;
+import fa.nfa.NFA;
+
+/**
+ * Membership checks of random strings, one score per string.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatchBenchmark
+{
+    private static final int STRINGS = 1024;
+
+    @Param({"NTH_FROM_LAST", "EPSILON_CHAIN", "DENSE_RANDOM", "LARGE_ALPHABET"})
+    public Automata.Family family;
+
+    @Param({"6", "10"})
+    public int size;
+
+    @Param({"64"})
+    public int length;
+
+    private String[] inputs;
+    private NFA nfa;
+    private DFA dfa;
+    private CompiledDFA compiled;
+    private LazyDFA lazy;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        Automata.Spec spec = family.generate(size);
+        inputs = spec.inputs(STRINGS, length, 7);
+        nfa = spec.toNFABuilder();
+        dfa = nfa.getDFA();
+        compiled = dfa.compile();
+        lazy = nfa.getLazyDFA(1 << 24);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRINGS)
+    public void dfaAccepts(Blackhole bh)
+    {
+        for(String s : inputs)
+        {
+            bh.consume(dfa.accepts(s));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRINGS)
+    public void compiledAccepts(Blackhole bh)
+    {
+        for(String s : inputs)
+        {
+            bh.consume(compiled.accepts(s));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRINGS)
+    public void nfaAccepts(Blackhole bh)
+    {
+        for(String s : inputs)
+        {
+            bh.consume(nfa.accepts(s));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRINGS)
+    public void lazyAccepts(Blackhole bh)
+    {
+        for(String s : inputs)
+        {
+            bh.consume(lazy.accepts(s));
+        }
+    }
+}
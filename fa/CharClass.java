@@ -0,0 +1,244 @@
+package fa;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of chars used as a transition label, stored
+ * as sorted, disjoint and non adjacent ranges. One transition
+ * on a class stands for a transition on each of its chars, so
+ * "any letter" or a Unicode block is a single edge.
+ * A class label never means the empty string, even if it only
+ * holds 'e'.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class CharClass {
+	/** lo0, hi0, lo1, hi1, ... with lo(i+1) > hi(i) + 1 */
+	private final char[] ranges;
+	private final int size;
+	private final int hash;
+
+	private CharClass(char[] ranges){
+		this.ranges = ranges;
+		int n = 0;
+		for(int i = 0; i < ranges.length; i += 2){
+			n += ranges[i + 1] - ranges[i] + 1;
+		}
+		this.size = n;
+		this.hash = Arrays.hashCode(ranges);
+	}
+
+	/**
+	 * @param c a char
+	 * @return the class holding only c
+	 */
+	public static CharClass of(char c){
+		return new CharClass(new char[]{c, c});
+	}
+
+	/**
+	 * @param lo the smallest char
+	 * @param hi the largest char
+	 * @return the class of the chars from lo to hi, inclusive
+	 * @throws IllegalArgumentException if hi is smaller than lo
+	 */
+	public static CharClass range(char lo, char hi){
+		if(hi < lo){
+			throw new IllegalArgumentException("Empty char range " + lo + "-" + hi);
+		}
+		return new CharClass(new char[]{lo, hi});
+	}
+
+	/**
+	 * @param chars the chars of the class
+	 * @return the class of the chars in the string
+	 * @throws IllegalArgumentException if chars is empty
+	 */
+	public static CharClass of(CharSequence chars){
+		if(chars.length() == 0){
+			throw new IllegalArgumentException("Empty char class");
+		}
+		char[] sorted = chars.toString().toCharArray();
+		Arrays.sort(sorted);
+		char[] r = new char[2 * sorted.length];
+		int n = 0;
+		for(char c : sorted){
+			if(n > 0 && c <= r[n - 1] + 1){
+				r[n - 1] = (char) Math.max(r[n - 1], c);
+			} else {
+				r[n++] = c;
+				r[n++] = c;
+			}
+		}
+		return new CharClass(Arrays.copyOf(r, n));
+	}
+
+	/**
+	 * Builds a class from ranges that are already sorted and disjoint
+	 * @param lo the first char of each range
+	 * @param hi the last char of each range
+	 * @param count the number of ranges
+	 * @return the class
+	 */
+	public static CharClass ofRanges(char[] lo, char[] hi, int count){
+		char[] r = new char[2 * count];
+		int n = 0;
+		for(int i = 0; i < count; i++){
+			if(n > 0 && lo[i] <= r[n - 1] + 1){
+				r[n - 1] = (char) Math.max(r[n - 1], hi[i]);
+			} else {
+				r[n++] = lo[i];
+				r[n++] = hi[i];
+			}
+		}
+		if(n == 0){
+			throw new IllegalArgumentException("Empty char class");
+		}
+		return new CharClass(Arrays.copyOf(r, n));
+	}
+
+	/**
+	 * @param other another class
+	 * @return the class of the chars in either class
+	 */
+	public CharClass union(CharClass other){
+		char[] lo = new char[rangeCount() + other.rangeCount()];
+		char[] hi = new char[lo.length];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while(i < rangeCount() || j < other.rangeCount()){
+			boolean mine = j == other.rangeCount() || (i < rangeCount() && ranges[2 * i] <= other.ranges[2 * j]);
+			CharClass from = mine ? this : other;
+			int at = mine ? i++ : j++;
+			lo[n] = from.ranges[2 * at];
+			hi[n++] = from.ranges[2 * at + 1];
+		}
+		return ofRanges(lo, hi, n);
+	}
+
+	/**
+	 * @param c a char
+	 * @return true if c is in the class
+	 */
+	public boolean contains(char c){
+		int lo = 0;
+		int hi = ranges.length / 2 - 1;
+		while(lo <= hi){
+			int mid = (lo + hi) >>> 1;
+			if(c < ranges[2 * mid]){
+				hi = mid - 1;
+			} else if(c > ranges[2 * mid + 1]){
+				lo = mid + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param other another class
+	 * @return true if some char is in both classes
+	 */
+	public boolean intersects(CharClass other){
+		int i = 0;
+		int j = 0;
+		while(i < ranges.length && j < other.ranges.length){
+			if(ranges[i + 1] < other.ranges[j]){
+				i += 2;
+			} else if(other.ranges[j + 1] < ranges[i]){
+				j += 2;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of chars in the class
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @return the smallest char of the class
+	 */
+	public char first(){
+		return ranges[0];
+	}
+
+	/**
+	 * @return the number of ranges
+	 */
+	public int rangeCount(){
+		return ranges.length / 2;
+	}
+
+	/**
+	 * @param i a range index
+	 * @return the first char of the range
+	 */
+	public char rangeStart(int i){
+		return ranges[2 * i];
+	}
+
+	/**
+	 * @param i a range index
+	 * @return the last char of the range
+	 */
+	public char rangeEnd(int i){
+		return ranges[2 * i + 1];
+	}
+
+	@Override
+	public boolean equals(Object o){
+		return o == this || (o instanceof CharClass && hash == ((CharClass) o).hash && Arrays.equals(ranges, ((CharClass) o).ranges));
+	}
+
+	@Override
+	public int hashCode(){
+		return hash;
+	}
+
+	/**
+	 * @return the char itself for a class of one char,
+	 * otherwise its ranges in brackets, e.g. [0-9a-f], with
+	 * [ ] - \ and unprintable chars escaped
+	 */
+	@Override
+	public String toString(){
+		if(size == 1){
+			return String.valueOf(ranges[0]);
+		}
+		StringBuilder s = new StringBuilder("[");
+		for(int i = 0; i < ranges.length; i += 2){
+			append(s, ranges[i]);
+			if(ranges[i + 1] > ranges[i]){
+				if(ranges[i + 1] > ranges[i] + 1){
+					s.append('-');
+				}
+				append(s, ranges[i + 1]);
+			}
+		}
+		return s.append(']').toString();
+	}
+
+	/**
+	 * Appends a char of a bracketed class, escaping the chars
+	 * that are part of the notation or not printable
+	 * @param s the string being built
+	 * @param c the char
+	 */
+	private static void append(StringBuilder s, char c){
+		if(c == '[' || c == ']' || c == '-' || c == '\\'){
+			s.append('\\').append(c);
+		} else if(Character.isISOControl(c) || Character.isSurrogate(c) || !Character.isDefined(c)){
+			s.append(String.format("\\u%04x", (int) c));
+		} else {
+			s.append(c);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package fa;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Collects the FAStatsMXBean counters. Counting is off until it is
+ * enabled through register, setEnabled or -Dfa.stats=true, and
+ * while it is off the recording methods are never called: callers
+ * test isOn first, which the JIT reduces to one load and branch.
+ * The JFR events are only created while isTracing holds, so nothing
+ * of jdk.jfr is loaded until counting or a recording starts.
+ * Once registered, a JFR recording also gets a fa.MatchStats event
+ * with the match counters every second while counting.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class FAStats implements FAStatsMXBean {
+	/** the name the MXBean is registered under */
+	public static final String NAME = "fa:type=FAStats";
+
+	private static final FAStats INSTANCE = new FAStats();
+	private static volatile boolean on;
+	/** true once the periodic event is added, guarded by the class lock */
+	private static boolean periodic;
+
+	private final LongAdder strings = new LongAdder();
+	private final LongAdder chars = new LongAdder();
+	private final AtomicLong determinizations = new AtomicLong();
+	private final AtomicLong determinizeNanos = new AtomicLong();
+	private final AtomicLong slowestNanos = new AtomicLong();
+	private final AtomicLong subsets = new AtomicLong();
+	private final AtomicLong transitions = new AtomicLong();
+	private final AtomicLong dedupeHits = new AtomicLong();
+	private final AtomicLong closures = new AtomicLong();
+	private final AtomicLong largestFrontier = new AtomicLong();
+	private final AtomicLong largestTable = new AtomicLong();
+	private volatile long since = System.nanoTime();
+
+	static {
+		if(Boolean.getBoolean("fa.stats")){
+			register();
+		}
+	}
+
+	private FAStats(){
+	}
+
+	/**
+	 * @return the counters of this JVM
+	 */
+	public static FAStats get(){
+		return INSTANCE;
+	}
+
+	/**
+	 * @return true if calls should be recorded
+	 */
+	public static boolean isOn(){
+		return on;
+	}
+
+	/**
+	 * @return true if JFR events should be created: counting is on
+	 * or the Flight Recorder has been started, e.g. by a recording
+	 */
+	public static boolean isTracing(){
+		return on || FlightRecorder.isInitialized();
+	}
+
+	/**
+	 * Registers the MXBean with the platform MBean server and the
+	 * periodic fa.MatchStats event with JFR, once, and starts counting
+	 */
+	public static synchronized void register(){
+		if(!periodic){
+			FlightRecorder.addPeriodicEvent(MatchStatsEvent.class, () -> {
+				MatchStatsEvent e = new MatchStatsEvent();
+				if(on){
+					e.strings = INSTANCE.getStringsMatched();
+					e.chars = INSTANCE.getCharsMatched();
+					e.stringsPerSecond = INSTANCE.getStringsPerSecond();
+					e.charsPerSecond = INSTANCE.getCharsPerSecond();
+					e.commit();
+				}
+			});
+			periodic = true;
+		}
+		try {
+			ObjectName name = new ObjectName(NAME);
+			if(!ManagementFactory.getPlatformMBeanServer().isRegistered(name)){
+				ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register " + NAME, e);
+		}
+		INSTANCE.setEnabled(true);
+	}
+
+	/**
+	 * Records a string checked by an accepts method
+	 * @param length the number of chars in it
+	 */
+	public static void matched(int length){
+		INSTANCE.strings.increment();
+		INSTANCE.chars.add(length);
+	}
+
+	/**
+	 * Records the closures computed while indexing an NFA
+	 * @param count the number of closures
+	 */
+	public static void closures(int count){
+		INSTANCE.closures.addAndGet(count);
+	}
+
+	/**
+	 * Records a finished subset construction
+	 * @param nanos the time it took
+	 * @param subsetCount the subsets it discovered
+	 * @param transitionCount the successor subsets it computed
+	 * @param hits the successors that were already known
+	 * @param frontier the most subsets in one level
+	 * @param tableBytes the estimated bytes of its subset table
+	 */
+	public static void determinized(long nanos, long subsetCount, long transitionCount, long hits, long frontier, long tableBytes){
+		FAStats s = INSTANCE;
+		s.determinizations.incrementAndGet();
+		s.determinizeNanos.addAndGet(nanos);
+		s.slowestNanos.accumulateAndGet(nanos, Math::max);
+		s.subsets.addAndGet(subsetCount);
+		s.transitions.addAndGet(transitionCount);
+		s.dedupeHits.addAndGet(hits);
+		s.largestFrontier.accumulateAndGet(frontier, Math::max);
+		s.largestTable.accumulateAndGet(tableBytes, Math::max);
+	}
+
+	@Override
+	public boolean isEnabled(){
+		return on;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled){
+		if(enabled && !on){
+			since = System.nanoTime();
+		}
+		on = enabled;
+	}
+
+	@Override
+	public void reset(){
+		strings.reset();
+		chars.reset();
+		for(AtomicLong a : new AtomicLong[]{determinizations, determinizeNanos, slowestNanos, subsets,
+				transitions, dedupeHits, closures, largestFrontier, largestTable}){
+			a.set(0);
+		}
+		since = System.nanoTime();
+	}
+
+	@Override
+	public long getDeterminizations(){
+		return determinizations.get();
+	}
+
+	@Override
+	public long getDeterminizeMillis(){
+		return determinizeNanos.get() / 1000000;
+	}
+
+	@Override
+	public long getSlowestDeterminizeMillis(){
+		return slowestNanos.get() / 1000000;
+	}
+
+	@Override
+	public long getSubsetsDiscovered(){
+		return subsets.get();
+	}
+
+	@Override
+	public long getSubsetTransitions(){
+		return transitions.get();
+	}
+
+	@Override
+	public long getDedupeHits(){
+		return dedupeHits.get();
+	}
+
+	@Override
+	public long getClosuresComputed(){
+		return closures.get();
+	}
+
+	@Override
+	public long getLargestFrontier(){
+		return largestFrontier.get();
+	}
+
+	@Override
+	public long getLargestSubsetTableBytes(){
+		return largestTable.get();
+	}
+
+	@Override
+	public long getStringsMatched(){
+		return strings.sum();
+	}
+
+	@Override
+	public long getCharsMatched(){
+		return chars.sum();
+	}
+
+	@Override
+	public double getStringsPerSecond(){
+		return perSecond(strings.sum());
+	}
+
+	@Override
+	public double getCharsPerSecond(){
+		return perSecond(chars.sum());
+	}
+
+	/**
+	 * @param count a counter
+	 * @return the counter divided by the seconds since it started
+	 */
+	private double perSecond(long count){
+		long nanos = System.nanoTime() - since;
+		return nanos <= 0 ? 0 : count * 1e9 / nanos;
+	}
+}
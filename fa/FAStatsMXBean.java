@@ -0,0 +1,90 @@
+package fa;
+
+/**
+ * Counters over all determinizations and membership checks in
+ * this JVM, published by FAStats under the name fa:type=FAStats.
+ * Counting costs one branch per call while it is disabled.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public interface FAStatsMXBean {
+	/**
+	 * @return true if calls are being counted
+	 */
+	public abstract boolean isEnabled();
+
+	/**
+	 * @param enabled true to count calls from now on
+	 */
+	public abstract void setEnabled(boolean enabled);
+
+	/**
+	 * Sets every counter back to zero
+	 */
+	public abstract void reset();
+
+	/**
+	 * @return the number of finished subset constructions
+	 */
+	public abstract long getDeterminizations();
+
+	/**
+	 * @return the total milliseconds spent in subset constructions
+	 */
+	public abstract long getDeterminizeMillis();
+
+	/**
+	 * @return the milliseconds taken by the slowest subset construction
+	 */
+	public abstract long getSlowestDeterminizeMillis();
+
+	/**
+	 * @return the number of distinct subsets discovered
+	 */
+	public abstract long getSubsetsDiscovered();
+
+	/**
+	 * @return the number of successor subsets computed
+	 */
+	public abstract long getSubsetTransitions();
+
+	/**
+	 * @return the number of successor subsets that were already known
+	 */
+	public abstract long getDedupeHits();
+
+	/**
+	 * @return the epsilon closures computed while indexing NFAs
+	 */
+	public abstract long getClosuresComputed();
+
+	/**
+	 * @return the most subsets waiting in one level of a search
+	 */
+	public abstract long getLargestFrontier();
+
+	/**
+	 * @return the estimated bytes of the largest subset table
+	 */
+	public abstract long getLargestSubsetTableBytes();
+
+	/**
+	 * @return the number of strings checked by an accepts method
+	 */
+	public abstract long getStringsMatched();
+
+	/**
+	 * @return the number of chars in those strings
+	 */
+	public abstract long getCharsMatched();
+
+	/**
+	 * @return strings checked per second since counting was enabled or reset
+	 */
+	public abstract double getStringsPerSecond();
+
+	/**
+	 * @return chars checked per second since counting was enabled or reset
+	 */
+	public abstract double getCharsPerSecond();
+}
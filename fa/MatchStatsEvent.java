@@ -0,0 +1,32 @@
+package fa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+/**
+ * Periodic JFR event with the FAStats match counters.
+ * It is only filled while FAStats is counting.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+@Name("fa.MatchStats")
+@Label("Match Statistics")
+@Category("Automata")
+@Description("Strings and chars checked by the accepts methods")
+@Period("1 s")
+class MatchStatsEvent extends jdk.jfr.Event {
+	@Label("Strings Matched")
+	long strings;
+
+	@Label("Chars Matched")
+	long chars;
+
+	@Label("Strings per Second")
+	double stringsPerSecond;
+
+	@Label("Chars per Second")
+	double charsPerSecond;
+}
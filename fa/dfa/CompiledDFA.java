@@ -0,0 +1,322 @@
+package fa.dfa;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import fa.CharClass;
+import fa.FAStats;
+
+/**
+ * An immutable, table driven form of a DFA for fast membership checks.
+ * States are numbered 0..n-1 in the order the DFA lists them, and
+ * every alphabet symbol and every class label is a symbol class.
+ * The transition of state s on class c is stored at
+ * table[s * alphabetSize + c], with -1 standing for a missing transition
+ * or one into a state from which no final state can be reached, such as
+ * the [] state of a determinized NFA, so matching stops as soon as the
+ * input can no longer be accepted.
+ * Matching allocates nothing, so one instance can be shared by
+ * any number of threads.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class CompiledDFA implements IntDFA {
+
+	final int[] table;
+	final int[] classOf;
+	final long[] finals;
+	final char[] symbols;
+	private final int alphabetSize;
+	private final int stateCount;
+	private final int start;
+
+	/**
+	 * @param table the transition table, state * alphabetSize + class
+	 * @param classOf the symbol class of each char below its length, -1 if none
+	 * @param finals bitset of the final states
+	 * @param symbols a representative char of each class, used for printing
+	 * @param stateCount the number of states
+	 * @param start the start state id, or DEAD
+	 */
+	CompiledDFA(int[] table, int[] classOf, long[] finals, char[] symbols, int stateCount, int start){
+		this.table = table;
+		this.classOf = classOf;
+		this.finals = finals;
+		this.symbols = symbols;
+		this.alphabetSize = symbols.length;
+		this.stateCount = stateCount;
+		this.start = start;
+	}
+
+	/**
+	 * Numbers the states of dfa in iteration order and flattens
+	 * its transitions into a table, sending those into states that
+	 * cannot reach a final state to DEAD
+	 * @param dfa the DFA to compile
+	 * @return the compiled DFA
+	 */
+	static CompiledDFA of(DFA dfa){
+		return of(dfa, true);
+	}
+
+	/**
+	 * Numbers the states of dfa in iteration order and flattens
+	 * its transitions into a table
+	 * @param dfa the DFA to compile
+	 * @param prune true to send transitions into states that cannot
+	 * reach a final state to DEAD, false to keep every transition
+	 * @return the compiled DFA
+	 */
+	static CompiledDFA of(DFA dfa, boolean prune){
+		CharClass[] labels = dfa.labels();
+		char[] symbols = symbols(labels);
+		int[] classOf = classOf(labels);
+
+		Map<DFAState, Integer> ids = new IdentityHashMap<DFAState, Integer>();
+		for(DFAState s : dfa.getStates()){
+			ids.put(s, ids.size());
+		}
+		int n = ids.size();
+		int[] table = new int[n * symbols.length];
+		long[] finals = new long[(n + 63) >>> 6];
+		for(Map.Entry<DFAState, Integer> e : ids.entrySet()){
+			DFAState s = e.getKey();
+			int id = e.getValue();
+			for(int c = 0; c < symbols.length; c++){
+				DFAState to = s.next(symbols[c]);
+				table[id * symbols.length + c] = to == null ? DEAD : ids.get(to);
+			}
+			if(s.isFinal()){
+				finals[id >>> 6] |= 1L << id;
+			}
+		}
+		DFAState q0 = dfa.getStartState();
+		int start = q0 == null ? DEAD : ids.get(q0);
+		if(prune){
+			long[] live = live(table, symbols.length, n, finals);
+			for(int i = 0; i < table.length; i++){
+				int t = table[i];
+				if(t >= 0 && (live[t >>> 6] & (1L << t)) == 0){
+					table[i] = DEAD;
+				}
+			}
+			if(start >= 0 && (live[start >>> 6] & (1L << start)) == 0){
+				start = DEAD;
+			}
+		}
+		return new CompiledDFA(table, classOf, finals, symbols, n, start);
+	}
+
+	/**
+	 * Walks the transitions backwards from the final states
+	 * @param table the transition table, state * k + class
+	 * @param k the number of classes
+	 * @param n the number of states
+	 * @param finals bitset of the final states
+	 * @return bitset of the states from which a final state can be reached
+	 */
+	static long[] live(int[] table, int k, int n, long[] finals){
+		//predecessors grouped by target, in compressed rows
+		int[] predOff = new int[n + 2];
+		for(int t : table){
+			if(t >= 0){
+				predOff[t + 2]++;
+			}
+		}
+		for(int s = 0; s < n; s++){
+			predOff[s + 2] += predOff[s + 1];
+		}
+		int[] pred = new int[predOff[n + 1]];
+		for(int i = 0; i < table.length; i++){
+			int t = table[i];
+			if(t >= 0){
+				pred[predOff[t + 1]++] = i / k;
+			}
+		}
+		long[] live = finals.clone();
+		int[] queue = new int[n];
+		int m = 0;
+		for(int s = 0; s < n; s++){
+			if((finals[s >>> 6] & (1L << s)) != 0){
+				queue[m++] = s;
+			}
+		}
+		for(int i = 0; i < m; i++){
+			int t = queue[i];
+			for(int j = predOff[t]; j < predOff[t + 1]; j++){
+				int s = pred[j];
+				if((live[s >>> 6] & (1L << s)) == 0){
+					live[s >>> 6] |= 1L << s;
+					queue[m++] = s;
+				}
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * @param labels the chars of each symbol class
+	 * @return the first char of each class
+	 */
+	static char[] symbols(CharClass[] labels){
+		char[] symbols = new char[labels.length];
+		for(int c = 0; c < labels.length; c++){
+			symbols[c] = labels[c].first();
+		}
+		return symbols;
+	}
+
+	/**
+	 * @param labels the chars of each symbol class, disjoint
+	 * @return the class of each char up to the largest one, -1 for none
+	 */
+	static int[] classOf(CharClass[] labels){
+		int max = -1;
+		for(CharClass label : labels){
+			max = Math.max(max, label.rangeEnd(label.rangeCount() - 1));
+		}
+		int[] classOf = new int[max + 1];
+		Arrays.fill(classOf, -1);
+		for(int c = 0; c < labels.length; c++){
+			for(int r = 0; r < labels[c].rangeCount(); r++){
+				Arrays.fill(classOf, labels[c].rangeStart(r), labels[c].rangeEnd(r) + 1, c);
+			}
+		}
+		return classOf;
+	}
+
+	/**
+	 * Runs the DFA over the whole sequence
+	 * @param input the input string, "e" stands for the empty string
+	 * @return true if input is in the language of the DFA
+	 */
+	@Override
+	public boolean accepts(CharSequence input){
+		if(FAStats.isOn()){
+			FAStats.matched(input.length());
+		}
+		if("e".contentEquals(input)){
+			return isFinal(start);
+		}
+		int s = start;
+		for(int i = 0, len = input.length(); i < len && s != DEAD; i++){
+			s = step(s, input.charAt(i));
+		}
+		return isFinal(s);
+	}
+
+	/**
+	 * Runs the DFA over a slice of a char array
+	 * @param input the characters
+	 * @param off index of the first character
+	 * @param len number of characters, a slice of just 'e' stands
+	 * for the empty string
+	 * @return true if the slice is in the language of the DFA
+	 */
+	public boolean accepts(char[] input, int off, int len){
+		if(FAStats.isOn()){
+			FAStats.matched(len);
+		}
+		if(len == 1 && input[off] == 'e'){
+			return isFinal(start);
+		}
+		int s = start;
+		for(int i = off, end = off + len; i < end && s != DEAD; i++){
+			s = step(s, input[i]);
+		}
+		return isFinal(s);
+	}
+
+	/**
+	 * Checks many strings at once, spread over the common fork join pool.
+	 * Each task fills whole 64 bit words of the result, so no two tasks
+	 * write the same word and nothing is allocated per string.
+	 * @param inputs the strings to check, a random access list
+	 * @return a set holding the index of every accepted string
+	 */
+	public BitSet acceptsAll(List<? extends CharSequence> inputs){
+		int size = inputs.size();
+		long[] words = new long[(size + 63) >>> 6];
+		IntStream.range(0, words.length).parallel().forEach(w -> {
+			long bits = 0;
+			int end = Math.min(size, (w + 1) << 6);
+			for(int i = w << 6; i < end; i++){
+				if(accepts(inputs.get(i))){
+					bits |= 1L << i;
+				}
+			}
+			words[w] = bits;
+		});
+		return BitSet.valueOf(words);
+	}
+
+	/**
+	 * Keeps the accepted strings of a stream. Parallel streams are
+	 * checked in parallel, since matching shares no mutable state.
+	 * @param <T> the type of the strings
+	 * @param inputs the strings to check
+	 * @return a stream of the accepted strings, in encounter order
+	 */
+	public <T extends CharSequence> Stream<T> filterAccepted(Stream<T> inputs){
+		return inputs.filter(this::accepts);
+	}
+
+	/**
+	 * One transition of the DFA
+	 * @param state a state id, not DEAD
+	 * @param c the input character
+	 * @return the next state id, or DEAD
+	 */
+	@Override
+	public int step(int state, char c){
+		int cls = c < classOf.length ? classOf[c] : -1;
+		return cls < 0 ? DEAD : table[state * alphabetSize + cls];
+	}
+
+	/**
+	 * @param state a state id or DEAD
+	 * @return true if state is a final state
+	 */
+	@Override
+	public boolean isFinal(int state){
+		return state >= 0 && (finals[state >>> 6] & (1L << state)) != 0;
+	}
+
+	/**
+	 * @return the start state id, DEAD if the DFA has none
+	 */
+	@Override
+	public int getStart(){
+		return start;
+	}
+
+	/**
+	 * @return the number of states
+	 */
+	@Override
+	public int getStateCount(){
+		return stateCount;
+	}
+
+	/**
+	 * @return the number of symbol classes
+	 */
+	@Override
+	public int getAlphabetSize(){
+		return alphabetSize;
+	}
+
+	/**
+	 * @param cls a symbol class
+	 * @return a character of that class
+	 */
+	@Override
+	public char getSymbol(int cls){
+		return symbols[cls];
+	}
+}
@@ -1,8 +1,18 @@
 package fa.dfa;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import fa.CharClass;
+import fa.FAStats;
+
 /**
  * Implementation of DFA class to be used
  * in p1p2
@@ -13,10 +23,16 @@ public class DFA implements DFAInterface{
 	private Set<DFAState> states;
 	private DFAState start;
 	private Set<Character> ordAbc;
+	private Set<CharClass> classes;//labels of class transitions
+	private HashMap<String, DFAState> byName;
+	private ArrayList<DFAState> unnamed;//added without a name lookup
 
 	public DFA(){
 		states = new LinkedHashSet<DFAState>();
 		ordAbc = new LinkedHashSet<Character>();
+		classes = new LinkedHashSet<CharClass>();
+		byName = new HashMap<String, DFAState>();
+		unnamed = new ArrayList<DFAState>();
 	}
 
 	/* (non-Javadoc)
@@ -63,6 +79,98 @@ public class DFA implements DFAInterface{
 
 	private void addState(DFAState s){
 		states.add(s);
+		byName.putIfAbsent(s.getName(), s);
+	}
+
+	/**
+	 * Adds an already constructed state without looking up its name.
+	 * Meant for constructions that guarantee unique states themselves.
+	 * @param s the state to add
+	 * @param isStart true if s becomes the start state
+	 */
+	public void addState(DFAState s, boolean isStart){
+		//the name is only looked up when needed, it may be expensive to build
+		states.add(s);
+		unnamed.add(s);
+		if(isStart){
+			start = s;
+		}
+	}
+
+	/**
+	 * Adds a transition between two states of this DFA
+	 * without looking up their names.
+	 * @param from the source state
+	 * @param onSymb the alphabet symbol
+	 * @param to the sink state
+	 */
+	public void addTransition(DFAState from, char onSymb, DFAState to){
+		addSymbol(onSymb);
+		from.addTransition(onSymb, to);
+	}
+
+	/**
+	 * Adds a transition on every char of a class between two states
+	 * of this DFA without looking up their names. A class of one
+	 * char is added as a transition on that char.
+	 * @param from the source state
+	 * @param onClass the chars
+	 * @param to the sink state
+	 * @throws IllegalArgumentException if the class overlaps another
+	 * class or a single char symbol of this DFA
+	 */
+	public void addTransition(DFAState from, CharClass onClass, DFAState to){
+		if(onClass.size() == 1){
+			addTransition(from, onClass.first(), to);
+			return;
+		}
+		if(!classes.contains(onClass)){
+			for(CharClass other : classes){
+				if(other.intersects(onClass)){
+					throw new IllegalArgumentException("Class " + onClass + " overlaps class " + other);
+				}
+			}
+			for(char c : ordAbc){
+				if(onClass.contains(c)){
+					throw new IllegalArgumentException("Class " + onClass + " holds the symbol " + c);
+				}
+			}
+			classes.add(onClass);
+		}
+		from.addTransition(onClass, to);
+	}
+
+	/**
+	 * Adds a transition on every char of a class
+	 * @param fromState the source state name
+	 * @param onClass the chars
+	 * @param toState the sink state name
+	 * @throws IllegalArgumentException if a state does not exist or the
+	 * class overlaps another class or a single char symbol of this DFA
+	 */
+	public void addTransition(String fromState, CharClass onClass, String toState){
+		DFAState from = checkIfExists(fromState);
+		DFAState to = checkIfExists(toState);
+		if(from == null || to == null){
+			throw new IllegalArgumentException("No DFA state exists with name " + (from == null ? fromState : toState));
+		}
+		addTransition(from, onClass, to);
+	}
+
+	/**
+	 * @param onSymb a symbol about to be used
+	 * @throws IllegalArgumentException if a class already holds it
+	 */
+	private void addSymbol(char onSymb){
+		if(ordAbc.contains(onSymb)){
+			return;
+		}
+		for(CharClass cls : classes){
+			if(cls.contains(onSymb)){
+				throw new IllegalArgumentException("The symbol " + onSymb + " is in class " + cls);
+			}
+		}
+		ordAbc.add(onSymb);
 	}
 
 	/* (non-Javadoc)
@@ -79,11 +187,8 @@ public class DFA implements DFAInterface{
 			System.err.println("ERROR: No DFA state exists with name " + toState);
 			System.exit(2);
 		}
+		addSymbol(onSymb);
 		from.addTransition(onSymb, to);
-		
-		if(!ordAbc.contains(onSymb)){
-			ordAbc.add(onSymb);
-		}
 	}
 
 	/**
@@ -92,14 +197,13 @@ public class DFA implements DFAInterface{
 	 * @return null if no state exist, or DFAState object otherwise.
 	 */
 	private DFAState checkIfExists(String name){
-		DFAState ret = null;
-		for(DFAState s : states){
-			if(s.getName().equals(name)){
-				ret = s;
-				break;
+		if(!unnamed.isEmpty()){
+			for(DFAState s : unnamed){
+				byName.putIfAbsent(s.getName(), s);
 			}
+			unnamed.clear();
 		}
-		return ret;
+		return byName.get(name);
 	}
 
 	/** (non-Javadoc)
@@ -107,60 +211,208 @@ public class DFA implements DFAInterface{
 	 **/
 	@Override
 	public String toString(){
+		StringBuilder s = new StringBuilder();
+		try {
+			writeTo(s);
+		} catch (IOException e) {
+			//a StringBuilder never throws
+			throw new UncheckedIOException(e);
+		}
+		return s.toString();
+	}
 
-		String s = "Q = { ";
-		String fStates = "F = { ";
-		for(DFAState state : states){
-			s += state.toString();
-			s +=" ";
-			if(state.isFinal()){
-				fStates +=state.toString();
-				fStates += " ";
+	/**
+	 * Streams the Q, Sigma, delta, q0 and F format of toString
+	 * @param out where the text goes
+	 * @throws IOException if out fails
+	 */
+	public void writeTo(Appendable out) throws IOException{
+		DFAExport.table(states, labels(), start, out);
+	}
+
+	/**
+	 * Streams the format of toString through a buffer and flushes it.
+	 * The writer is not closed.
+	 * @param out where the text goes
+	 * @throws IOException if writing fails
+	 */
+	public void writeTo(Writer out) throws IOException{
+		BufferedWriter buf = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out, 1 << 16);
+		writeTo((Appendable) buf);
+		buf.flush();
+	}
+
+	/**
+	 * Streams this DFA as a Graphviz digraph
+	 * @param out where the text goes
+	 * @throws IOException if out fails
+	 */
+	public void writeDot(Appendable out) throws IOException{
+		DFAExport.dot(states, labels(), start, out);
+	}
+
+	/**
+	 * Streams this DFA as a JSON object with its alphabet,
+	 * states, start state and transitions
+	 * @param out where the text goes
+	 * @throws IOException if out fails
+	 */
+	public void writeJson(Appendable out) throws IOException{
+		DFAExport.json(states, labels(), start, out);
+	}
+
+	@Override
+	public boolean accepts(String input) {
+		if(FAStats.isOn()){
+			FAStats.matched(input.length());
+		}
+		DFAState currState = start;
+		//"e" stands for the empty string
+		if(!input.equals("e")){
+			for(int i = 0; i < input.length() && currState != null; i++){
+				currState = currState.next(input.charAt(i));
 			}
 		}
-		s += "}\n";
-		fStates += "}\n";
-		s += "Sigma = { ";
-		for(char c : ordAbc){
-			s += c + " ";
+		return currState != null && currState.isFinal();
+	}
+
+	/**
+	 * Builds the minimal DFA for the same language with Hopcroft's
+	 * algorithm. Unreachable states are dropped and each group of
+	 * equivalent states is merged into its first state, which keeps its name.
+	 * @return a new, minimal DFA
+	 */
+	public DFA minimize(){
+		DFA ret = new DFA();
+		ret.ordAbc.addAll(ordAbc);
+		ret.classes.addAll(classes);
+		if(start == null){
+			return ret;
 		}
-		s += "}\n";
-		//create transition table
-		s += "delta =\n"+String.format("%10s", "");;
-		for(char c : ordAbc){
-			s += String.format("%10s", c);
+		//the minimizer keeps sink states, so none are pruned
+		CompiledDFA c = CompiledDFA.of(this, false);
+		int n = c.getStateCount();
+		int k = c.getAlphabetSize();
+		int[] blockOf = Minimizer.partition(c.table, k, n, c.finals, c.getStart());
+		DFAState[] old = states.toArray(new DFAState[n]);
+		CharClass[] labels = labels();
+
+		//a block holding only the implicit dead state stays implicit
+		int realBlocks = 0;
+		for(int s = 0; s < n; s++){
+			realBlocks = Math.max(realBlocks, blockOf[s] + 1);
 		}
-		s+="\n";
-		for(DFAState state : states){
-			s += String.format("%10s",state.toString());
-			for(char c : ordAbc){
-				s += String.format("%10s", state.getTo(c).toString());
+		DFAState[] merged = new DFAState[realBlocks];
+		int[] rep = new int[realBlocks];
+		for(int s = 0; s < n; s++){
+			int b = blockOf[s];
+			if(b >= 0 && merged[b] == null){
+				merged[b] = new DFAState(old[s].getName(), old[s].isFinal());
+				rep[b] = s;
+				ret.addState(merged[b], s == c.getStart());
+			}
+		}
+		for(int b = 0; b < realBlocks; b++){
+			for(int sym = 0; sym < k; sym++){
+				int t = c.table[rep[b] * k + sym];
+				int tb = blockOf[t < 0 ? n : t];
+				if(tb < realBlocks){
+					ret.addTransition(merged[b], labels[sym], merged[tb]);
+				}
 			}
-			s+="\n";
 		}
-		//start state
-		s += "q0 = " + start + "\n";
-		s += fStates;
-		return s;
+		return ret;
 	}
 
-	@Override
-	public boolean accepts(String input) {
-		boolean ret = false;
-		char[] inputString = input.toCharArray();
-		DFAState currState = start;
-		//iterate over the chars
-		if(!(inputString.length==1 && inputString[0] == 'e')){
-			for(char c : inputString){
-				currState = currState.getTo(c);
+	/**
+	 * Checks that both DFAs accept the same strings, whatever their
+	 * state names, with Hopcroft and Karp's union-find check over
+	 * the product of the two DFAs, built only as far as needed
+	 * @param other another DFA
+	 * @return true if the languages are equal
+	 */
+	public boolean isEquivalent(DFA other){
+		return differenceWitness(other) == null;
+	}
+
+	/**
+	 * Other symbols are tried before 'e', but the one char witness "e"
+	 * can still come back, and accepts reads it as the empty string:
+	 * check it with compile().matcher(), which reads 'e' as a char.
+	 * @param other another DFA
+	 * @return a string accepted by exactly one of the DFAs, "" for the
+	 * empty string, or null if they are equivalent
+	 */
+	public String differenceWitness(DFA other){
+		return new Equivalence(compile(), other.compile()).difference();
+	}
+
+	/**
+	 * Checks that every string this DFA accepts is accepted by other,
+	 * exploring the product of the two DFAs only as far as needed
+	 * @param other another DFA
+	 * @return true if the language of this DFA is a subset of the other's
+	 */
+	public boolean isSubsetOf(DFA other){
+		return inclusionWitness(other) == null;
+	}
+
+	/**
+	 * The witness is spelled as in differenceWitness.
+	 * @param other another DFA
+	 * @return a shortest string this DFA accepts and other rejects,
+	 * "" for the empty string, or null if there is none
+	 */
+	public String inclusionWitness(DFA other){
+		return new Equivalence(compile(), other.compile()).notIn();
+	}
+
+	/**
+	 * Copies the DFA into an immutable view that threads can share
+	 * without locking. Later changes to this DFA are not seen by it,
+	 * and it must be taken while no thread changes this DFA.
+	 * @return the snapshot
+	 */
+	public DFASnapshot snapshot(){
+		return new DFASnapshot(this);
+	}
+
+	/**
+	 * Copies the states and transitions into new states with the
+	 * same names, in the same order
+	 * @return the copy
+	 */
+	DFA copy(){
+		DFA ret = new DFA();
+		ret.ordAbc.addAll(ordAbc);
+		ret.classes.addAll(classes);
+		IdentityHashMap<DFAState, DFAState> copies = new IdentityHashMap<DFAState, DFAState>();
+		for(DFAState s : states){
+			DFAState c = new DFAState(s.getName(), s.isFinal());
+			copies.put(s, c);
+			ret.addState(c, s == start);
+		}
+		CharClass[] labels = labels();
+		for(DFAState s : states){
+			for(CharClass label : labels){
+				DFAState to = copies.get(s.next(label.first()));
+				if(to != null){
+					ret.addTransition(copies.get(s), label, to);
+				}
 			}
 		}
-		if(currState.isFinal()){
-			ret = true;
-		} 
 		return ret;
 	}
 
+	/**
+	 * Flattens this DFA into an immutable transition table.
+	 * Later changes to this DFA are not reflected in the result.
+	 * @return the compiled form of this DFA
+	 */
+	public CompiledDFA compile(){
+		return CompiledDFA.of(this);
+	}
+
 	@Override
 	public Set<DFAState> getStates() {
 		return states;
@@ -187,8 +439,35 @@ public class DFA implements DFAInterface{
 		return from.getTo(onSymb);
 	}
 
+	/**
+	 * @return the single char symbols, the chars of
+	 * class transitions are in getClasses
+	 */
 	@Override
 	public Set<Character> getABC() {
 		return ordAbc;
 	}
+
+	/**
+	 * @return the labels of the class transitions
+	 */
+	public Set<CharClass> getClasses() {
+		return classes;
+	}
+
+	/**
+	 * @return the single char symbols followed by the classes,
+	 * in the order compile numbers them
+	 */
+	CharClass[] labels(){
+		CharClass[] ret = new CharClass[ordAbc.size() + classes.size()];
+		int i = 0;
+		for(char c : ordAbc){
+			ret[i++] = CharClass.of(c);
+		}
+		for(CharClass cls : classes){
+			ret[i++] = cls;
+		}
+		return ret;
+	}
 }
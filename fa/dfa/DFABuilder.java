@@ -0,0 +1,215 @@
+package fa.dfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import fa.CharClass;
+
+/**
+ * Collects the states and transitions of a large DFA and turns
+ * them into a DFA in O(states + transitions).
+ * State names are interned to int ids through a hash map, so
+ * transitions can be given in bulk as parallel arrays of ids.
+ * A state that is named in a transition before it is added
+ * becomes a plain, non final state.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class DFABuilder {
+	private final HashMap<String, Integer> ids;
+	private String[] names;
+	private boolean[] finals;
+	private int count;
+	private int start;
+	private int[] from;
+	private char[] on;
+	private int[] to;
+	private CharClass[] classes;
+	private int edges;
+
+	/**
+	 * Creates an empty builder
+	 */
+	public DFABuilder(){
+		ids = new HashMap<String, Integer>();
+		names = new String[16];
+		finals = new boolean[16];
+		start = -1;
+		from = new int[16];
+		on = new char[16];
+		to = new int[16];
+		classes = new CharClass[16];
+	}
+
+	/**
+	 * @param name a state name
+	 * @return the id of the state, which is added if it is new
+	 */
+	public int state(String name){
+		Integer id = ids.get(name);
+		if(id != null){
+			return id;
+		}
+		if(count == names.length){
+			names = Arrays.copyOf(names, count * 2);
+			finals = Arrays.copyOf(finals, count * 2);
+		}
+		names[count] = name;
+		ids.put(name, count);
+		return count++;
+	}
+
+	/**
+	 * @param name the name of the state
+	 * @return this builder
+	 */
+	public DFABuilder addState(String name){
+		state(name);
+		return this;
+	}
+
+	/**
+	 * @param name the name of the final state
+	 * @return this builder
+	 */
+	public DFABuilder addFinalState(String name){
+		int id = state(name);
+		finals[id] = true;
+		return this;
+	}
+
+	/**
+	 * @param name the name of the start state
+	 * @return this builder
+	 */
+	public DFABuilder addStartState(String name){
+		start = state(name);
+		return this;
+	}
+
+	/**
+	 * @param fromState the source state name
+	 * @param onSymb the alphabet symbol
+	 * @param toState the sink state name
+	 * @return this builder
+	 */
+	public DFABuilder addTransition(String fromState, char onSymb, String toState){
+		return addTransition(state(fromState), onSymb, state(toState));
+	}
+
+	/**
+	 * A later transition on the same symbol from the same state
+	 * replaces the earlier one
+	 * @param fromState the source state id
+	 * @param onSymb the alphabet symbol
+	 * @param toState the sink state id
+	 * @return this builder
+	 */
+	public DFABuilder addTransition(int fromState, char onSymb, int toState){
+		return addEdge(fromState, onSymb, null, toState);
+	}
+
+	/**
+	 * @param fromState the source state name
+	 * @param onClass the chars
+	 * @param toState the sink state name
+	 * @return this builder
+	 */
+	public DFABuilder addTransition(String fromState, CharClass onClass, String toState){
+		return addTransition(state(fromState), onClass, state(toState));
+	}
+
+	/**
+	 * A later transition on the same class from the same state
+	 * replaces the earlier one. Classes may not overlap each
+	 * other or single char symbols, which build checks.
+	 * @param fromState the source state id
+	 * @param onClass the chars
+	 * @param toState the sink state id
+	 * @return this builder
+	 */
+	public DFABuilder addTransition(int fromState, CharClass onClass, int toState){
+		return addEdge(fromState, onClass.first(), onClass, toState);
+	}
+
+	/**
+	 * @param fromState the source state id
+	 * @param onSymb the symbol, unused for a class transition
+	 * @param onClass the class, or null for a single symbol
+	 * @param toState the sink state id
+	 * @return this builder
+	 */
+	private DFABuilder addEdge(int fromState, char onSymb, CharClass onClass, int toState){
+		if(fromState < 0 || fromState >= count || toState < 0 || toState >= count){
+			throw new IllegalArgumentException("No DFA state with id " + (fromState < 0 || fromState >= count ? fromState : toState));
+		}
+		if(edges == from.length){
+			from = Arrays.copyOf(from, edges * 2);
+			on = Arrays.copyOf(on, edges * 2);
+			to = Arrays.copyOf(to, edges * 2);
+			classes = Arrays.copyOf(classes, edges * 2);
+		}
+		from[edges] = fromState;
+		on[edges] = onSymb;
+		classes[edges] = onClass;
+		to[edges] = toState;
+		edges++;
+		return this;
+	}
+
+	/**
+	 * Adds the transitions fromStates[i] -onSymbs[i]-> toStates[i]
+	 * @param fromStates the source state ids
+	 * @param onSymbs the symbols
+	 * @param toStates the sink state ids
+	 * @return this builder
+	 */
+	public DFABuilder addTransitions(int[] fromStates, char[] onSymbs, int[] toStates){
+		if(fromStates.length != onSymbs.length || onSymbs.length != toStates.length){
+			throw new IllegalArgumentException("Transition arrays differ in length");
+		}
+		for(int i = 0; i < fromStates.length; i++){
+			addTransition(fromStates[i], onSymbs[i], toStates[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the transitions fromStates[i] -onSymbs[i]-> toStates[i]
+	 * @param fromStates the source state names
+	 * @param onSymbs the symbols
+	 * @param toStates the sink state names
+	 * @return this builder
+	 */
+	public DFABuilder addTransitions(String[] fromStates, char[] onSymbs, String[] toStates){
+		if(fromStates.length != onSymbs.length || onSymbs.length != toStates.length){
+			throw new IllegalArgumentException("Transition arrays differ in length");
+		}
+		for(int i = 0; i < fromStates.length; i++){
+			addTransition(state(fromStates[i]), onSymbs[i], state(toStates[i]));
+		}
+		return this;
+	}
+
+	/**
+	 * @return a new DFA with the states and transitions added so far
+	 * @throws IllegalArgumentException if a class overlaps another
+	 * class or a single char symbol
+	 */
+	public DFA build(){
+		DFA dfa = new DFA();
+		DFAState[] states = new DFAState[count];
+		for(int i = 0; i < count; i++){
+			states[i] = new DFAState(names[i], finals[i]);
+			dfa.addState(states[i], i == start);
+		}
+		for(int i = 0; i < edges; i++){
+			if(classes[i] == null){
+				dfa.addTransition(states[from[i]], on[i], states[to[i]]);
+			} else {
+				dfa.addTransition(states[from[i]], classes[i], states[to[i]]);
+			}
+		}
+		return dfa;
+	}
+}
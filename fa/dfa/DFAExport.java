@@ -0,0 +1,210 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.util.Set;
+
+import fa.CharClass;
+
+/**
+ * Streams a DFA to an Appendable in the table, Graphviz DOT
+ * or JSON format. Every state and transition is written as it
+ * is visited, so the time is linear in the size of the DFA and
+ * nothing but the current line is held in memory.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+final class DFAExport {
+	/** the width of a column of the transition table */
+	private static final int COLUMN = 10;
+
+	private DFAExport(){
+	}
+
+	/**
+	 * Writes the Q, Sigma, delta, q0 and F format of DFA.toString.
+	 * A missing transition is an empty cell.
+	 * @param states the states in order
+	 * @param abc the symbols and classes in order
+	 * @param start the start state, or null
+	 * @param out where the text goes
+	 * @throws IOException if out fails
+	 */
+	static void table(Set<DFAState> states, CharClass[] abc, DFAState start, Appendable out) throws IOException{
+		out.append("Q = { ");
+		for(DFAState state : states){
+			out.append(state.toString()).append(' ');
+		}
+		out.append("}\n");
+		out.append("Sigma = { ");
+		for(CharClass c : abc){
+			out.append(c.toString()).append(' ');
+		}
+		out.append("}\n");
+		out.append("delta =\n");
+		column(out, "");
+		for(CharClass c : abc){
+			column(out, c.toString());
+		}
+		out.append('\n');
+		for(DFAState state : states){
+			column(out, state.toString());
+			for(CharClass c : abc){
+				DFAState to = state.next(c.first());
+				column(out, to == null ? "" : to.toString());
+			}
+			out.append('\n');
+		}
+		out.append("q0 = ").append(String.valueOf(start)).append('\n');
+		out.append("F = { ");
+		for(DFAState state : states){
+			if(state.isFinal()){
+				out.append(state.toString()).append(' ');
+			}
+		}
+		out.append("}\n");
+	}
+
+	/**
+	 * Right aligns s in a column, like String.format("%10s", s)
+	 * @param out where the text goes
+	 * @param s the cell
+	 * @throws IOException if out fails
+	 */
+	private static void column(Appendable out, String s) throws IOException{
+		for(int i = s.length(); i < COLUMN; i++){
+			out.append(' ');
+		}
+		out.append(s);
+	}
+
+	/**
+	 * Writes a Graphviz digraph. Final states are double circles
+	 * and an invisible node points at the start state.
+	 * @param states the states in order
+	 * @param abc the symbols and classes in order
+	 * @param start the start state, or null
+	 * @param out where the text goes
+	 * @throws IOException if out fails
+	 */
+	static void dot(Set<DFAState> states, CharClass[] abc, DFAState start, Appendable out) throws IOException{
+		out.append("digraph DFA {\n");
+		out.append("\trankdir=LR;\n");
+		out.append("\tnode [shape=circle];\n");
+		for(DFAState state : states){
+			out.append('\t');
+			quote(out, state.getName());
+			if(state.isFinal()){
+				out.append(" [shape=doublecircle]");
+			}
+			out.append(";\n");
+		}
+		if(start != null){
+			out.append("\t\"\" [shape=none, width=0, height=0, label=\"\"];\n");
+			out.append("\t\"\" -> ");
+			quote(out, start.getName());
+			out.append(";\n");
+		}
+		for(DFAState state : states){
+			for(CharClass c : abc){
+				DFAState to = state.next(c.first());
+				if(to != null){
+					out.append('\t');
+					quote(out, state.getName());
+					out.append(" -> ");
+					quote(out, to.getName());
+					out.append(" [label=");
+					quote(out, c.toString());
+					out.append("];\n");
+				}
+			}
+		}
+		out.append("}\n");
+	}
+
+	/**
+	 * Writes a JSON object with the members "alphabet", "states"
+	 * (each with a "name" and "final"), "start" and "transitions"
+	 * (each with "from", "on" and "to"). A missing start is null.
+	 * @param states the states in order
+	 * @param abc the symbols and classes in order
+	 * @param start the start state, or null
+	 * @param out where the text goes
+	 * @throws IOException if out fails
+	 */
+	static void json(Set<DFAState> states, CharClass[] abc, DFAState start, Appendable out) throws IOException{
+		out.append("{\n  \"alphabet\": [");
+		boolean first = true;
+		for(CharClass c : abc){
+			out.append(first ? "" : ", ");
+			quote(out, c.toString());
+			first = false;
+		}
+		out.append("],\n  \"states\": [");
+		first = true;
+		for(DFAState state : states){
+			out.append(first ? "\n    " : ",\n    ");
+			out.append("{\"name\": ");
+			quote(out, state.getName());
+			out.append(", \"final\": ").append(String.valueOf(state.isFinal())).append('}');
+			first = false;
+		}
+		out.append(first ? "],\n" : "\n  ],\n");
+		out.append("  \"start\": ");
+		if(start == null){
+			out.append("null");
+		} else {
+			quote(out, start.getName());
+		}
+		out.append(",\n  \"transitions\": [");
+		first = true;
+		for(DFAState state : states){
+			for(CharClass c : abc){
+				DFAState to = state.next(c.first());
+				if(to != null){
+					out.append(first ? "\n    " : ",\n    ");
+					out.append("{\"from\": ");
+					quote(out, state.getName());
+					out.append(", \"on\": ");
+					quote(out, c.toString());
+					out.append(", \"to\": ");
+					quote(out, to.getName());
+					out.append('}');
+					first = false;
+				}
+			}
+		}
+		out.append(first ? "]\n}\n" : "\n  ]\n}\n");
+	}
+
+	/**
+	 * Writes s as a double quoted string, escaped for both DOT and JSON
+	 * @param out where the text goes
+	 * @param s the string, "null" if null
+	 * @throws IOException if out fails
+	 */
+	private static void quote(Appendable out, String s) throws IOException{
+		s = String.valueOf(s);
+		out.append('"');
+		for(int i = 0; i < s.length(); i++){
+			char c = s.charAt(i);
+			switch(c){
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			default:
+				if(c < 0x20){
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+}
@@ -0,0 +1,179 @@
+package fa.dfa;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A versioned binary format for compiled DFAs.
+ * All numbers are little endian and every section starts on an
+ * 8 byte boundary, so a mapped file can be read in place:
+ * <pre>
+ * int magic "FADF", int version, int flags (1 = labels present)
+ * int states, int classes, int start, int classOf length, int padding
+ * char[classes] a symbol of each class, padded
+ * int[classOf length] the class of each char, padded
+ * long[(states + 63) / 64] the final state bitset
+ * int[states * classes] the transition table, padded
+ * if labels are present: int[states + 1] offsets into the
+ * UTF-8 bytes of the labels that follow, padded
+ * </pre>
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class DFAFile {
+	static final int MAGIC = 0x46444146;
+	static final int VERSION = 1;
+	static final int LABELS = 1;
+	static final int HEADER = 32;
+
+	private DFAFile(){
+	}
+
+	/**
+	 * Writes the DFA with its state names as labels
+	 * @param dfa the DFA to write
+	 * @param out the stream, not closed
+	 * @throws IOException if writing fails
+	 */
+	public static void write(DFA dfa, OutputStream out) throws IOException{
+		String[] labels = new String[dfa.getStates().size()];
+		int i = 0;
+		for(DFAState s : dfa.getStates()){
+			labels[i++] = s.getName();
+		}
+		write(dfa.compile(), labels, out);
+	}
+
+	/**
+	 * Writes a compiled DFA
+	 * @param dfa the DFA to write
+	 * @param labels the name of every state, or null
+	 * @param out the stream, not closed
+	 * @throws IOException if writing fails
+	 */
+	public static void write(CompiledDFA dfa, String[] labels, OutputStream out) throws IOException{
+		int n = dfa.getStateCount();
+		int k = dfa.getAlphabetSize();
+		ByteBuffer b = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+		b.putInt(MAGIC).putInt(VERSION).putInt(labels == null ? 0 : LABELS);
+		b.putInt(n).putInt(k).putInt(dfa.getStart()).putInt(dfa.classOf.length).putInt(0);
+		long written = HEADER;
+		for(char c : dfa.symbols){
+			b = room(b, out, 2);
+			b.putChar(c);
+		}
+		written += 2L * k;
+		b = pad(b, out, written);
+		written = align(written);
+		for(int c : dfa.classOf){
+			b = room(b, out, 4);
+			b.putInt(c);
+		}
+		written += 4L * dfa.classOf.length;
+		b = pad(b, out, written);
+		for(long w : dfa.finals){
+			b = room(b, out, 8);
+			b.putLong(w);
+		}
+		for(int t : dfa.table){
+			b = room(b, out, 4);
+			b.putInt(t);
+		}
+		written = 4L * dfa.table.length;
+		b = pad(b, out, written);
+		if(labels != null){
+			byte[][] bytes = new byte[n][];
+			int offset = 0;
+			b = room(b, out, 4);
+			b.putInt(0);
+			for(int i = 0; i < n; i++){
+				bytes[i] = labels[i].getBytes(StandardCharsets.UTF_8);
+				offset += bytes[i].length;
+				b = room(b, out, 4);
+				b.putInt(offset);
+			}
+			b = pad(b, out, 4L * (n + 1));
+			for(byte[] label : bytes){
+				for(byte x : label){
+					b = room(b, out, 1);
+					b.put(x);
+				}
+			}
+		}
+		out.write(b.array(), 0, b.position());
+		out.flush();
+	}
+
+	/**
+	 * @param b the buffer
+	 * @param out where full buffers go
+	 * @param bytes the number of bytes about to be put
+	 * @return b, emptied into out if it had no room
+	 */
+	private static ByteBuffer room(ByteBuffer b, OutputStream out, int bytes) throws IOException{
+		if(b.remaining() < bytes){
+			out.write(b.array(), 0, b.position());
+			b.clear();
+		}
+		return b;
+	}
+
+	/**
+	 * @param b the buffer
+	 * @param out where full buffers go
+	 * @param written the length of the section just put
+	 * @return b, with zeros up to the next 8 byte boundary
+	 */
+	private static ByteBuffer pad(ByteBuffer b, OutputStream out, long written) throws IOException{
+		for(long i = written; i < align(written); i++){
+			b = room(b, out, 1);
+			b.put((byte) 0);
+		}
+		return b;
+	}
+
+	/**
+	 * @param length a section length
+	 * @return length rounded up to a multiple of 8
+	 */
+	static long align(long length){
+		return (length + 7) & ~7L;
+	}
+
+	/**
+	 * Writes the DFA with its state names as labels
+	 * @param dfa the DFA to write
+	 * @param file the file, replaced if it exists
+	 * @throws IOException if writing fails
+	 */
+	public static void write(DFA dfa, Path file) throws IOException{
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)){
+			write(dfa, out);
+		}
+	}
+
+	/**
+	 * Maps a DFA file into memory. Nothing is copied onto the heap, so
+	 * loading takes the same time for any size and processes that map
+	 * the same file share its pages. Large tables are mapped in 1 GB
+	 * segments, so the file may be larger than 2 GB. Every header field
+	 * is checked against the file size before this returns.
+	 * @param file a file written by write
+	 * @return the DFA, valid as long as it is reachable
+	 * @throws IOException if the file cannot be mapped, is not a DFA
+	 * file or its header does not fit its size
+	 */
+	public static MappedDFA map(Path file) throws IOException{
+		try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)){
+			return new MappedDFA(ch);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Runs a table driven DFA over input that arrives in pieces.
+ * Only the current state is kept, so inputs of any length can be
+ * checked in constant memory. Reading stops as soon as the DFA
+ * can no longer reach an accepting state: compiled and off-heap DFAs
+ * go to DEAD instead of into states without a path to a final state.
+ * A matcher is not thread safe, but the DFA can be shared by
+ * any number of matchers.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class DFAMatcher {
+	/** chars decoded per read */
+	private static final int BUFFER = 8192;
+	/** bytes mapped at a time */
+	private static final long WINDOW = 1L << 28;
+
+	private final IntDFA dfa;
+	private int state;
+
+	/**
+	 * @param dfa the DFA to run
+	 */
+	DFAMatcher(IntDFA dfa){
+		this.dfa = dfa;
+		this.state = dfa.getStart();
+	}
+
+	/**
+	 * Goes back to the start state
+	 */
+	public void reset(){
+		state = dfa.getStart();
+	}
+
+	/**
+	 * @return true if the input fed so far is in the language of the DFA
+	 */
+	public boolean isAccepting(){
+		return dfa.isFinal(state);
+	}
+
+	/**
+	 * @return true if the DFA went to DEAD, through a missing transition
+	 * or one into a state without a path to a final state, so no
+	 * continuation of the input can be accepted
+	 */
+	public boolean isDead(){
+		return state == IntDFA.DEAD;
+	}
+
+	/**
+	 * @param c the next input character
+	 */
+	public void feed(char c){
+		if(state != IntDFA.DEAD){
+			state = dfa.step(state, c);
+		}
+	}
+
+	/**
+	 * Consumes the remaining characters of the buffer
+	 * @param chars the next input characters
+	 */
+	public void feed(CharBuffer chars){
+		int s = state;
+		while(chars.hasRemaining() && s != IntDFA.DEAD){
+			s = dfa.step(s, chars.get());
+		}
+		chars.position(chars.limit());
+		state = s;
+	}
+
+	/**
+	 * @param chars the next input characters
+	 */
+	public void feed(CharSequence chars){
+		int s = state;
+		for(int i = 0, len = chars.length(); i < len && s != IntDFA.DEAD; i++){
+			s = dfa.step(s, chars.charAt(i));
+		}
+		state = s;
+	}
+
+	/**
+	 * Reads the reader to its end, or until the DFA is dead.
+	 * The reader is not closed.
+	 * @param in the next input characters
+	 * @throws IOException if reading fails
+	 */
+	public void feed(Reader in) throws IOException{
+		char[] buf = new char[BUFFER];
+		int n;
+		while(state != IntDFA.DEAD && (n = in.read(buf)) > 0){
+			int s = state;
+			for(int i = 0; i < n && s != IntDFA.DEAD; i++){
+				s = dfa.step(s, buf[i]);
+			}
+			state = s;
+		}
+	}
+
+	/**
+	 * Decodes and reads the stream to its end, or until the DFA is dead.
+	 * The stream is not closed.
+	 * @param in the next input bytes
+	 * @param charset the encoding of the bytes
+	 * @throws IOException if reading fails
+	 */
+	public void feed(InputStream in, Charset charset) throws IOException{
+		feed(new InputStreamReader(in, charset));
+	}
+
+	/**
+	 * Decodes and reads a region of a file through memory mapped
+	 * windows, so the file never has to fit in the heap.
+	 * @param channel the file
+	 * @param position the first byte of the region
+	 * @param size the number of bytes in the region
+	 * @param charset the encoding of the bytes
+	 * @throws IOException if mapping fails or the bytes are malformed
+	 */
+	public void feed(FileChannel channel, long position, long size, Charset charset) throws IOException{
+		CharsetDecoder decoder = charset.newDecoder();
+		CharBuffer chars = CharBuffer.allocate(BUFFER);
+		long end = position + size;
+		long pos = position;
+		boolean ended = false;
+		while(pos < end && state != IntDFA.DEAD){
+			long len = Math.min(WINDOW, end - pos);
+			boolean last = pos + len == end;
+			ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+			while(true){
+				CoderResult r = decoder.decode(bytes, chars, last);
+				chars.flip();
+				feed(chars);
+				chars.clear();
+				if(r.isError()){
+					r.throwException();
+				}
+				if(r.isUnderflow() || state == IntDFA.DEAD){
+					break;
+				}
+			}
+			if(!last && bytes.position() == 0){
+				throw new CharacterCodingException();
+			}
+			//a character cut by the window end is decoded again from the next window
+			pos += bytes.position();
+			if(last){
+				ended = true;
+				break;
+			}
+		}
+		if(ended && state != IntDFA.DEAD){
+			decoder.flush(chars);
+			chars.flip();
+			feed(chars);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An immutable view of a DFA as it was when DFA.snapshot was called.
+ * It holds a private copy of the states, which nothing can change, and
+ * its compiled table, so any number of threads, platform or virtual,
+ * can match, print and compare through one snapshot without locking.
+ * Operations that build a DFA return a new one that belongs to the caller.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class DFASnapshot {
+	private final DFA dfa;
+	private final CompiledDFA compiled;
+
+	/**
+	 * @param source the DFA to copy
+	 */
+	DFASnapshot(DFA source){
+		this.dfa = source.copy();
+		this.compiled = dfa.compile();
+	}
+
+	/**
+	 * @param input the input string, "e" stands for the empty string
+	 * @return true if the DFA accepts input
+	 */
+	public boolean accepts(String input){
+		return compiled.accepts(input);
+	}
+
+	/**
+	 * @return a new matcher over the compiled table, for one thread
+	 */
+	public DFAMatcher matcher(){
+		return compiled.matcher();
+	}
+
+	/**
+	 * @return the compiled table, which is immutable as well
+	 */
+	public CompiledDFA compile(){
+		return compiled;
+	}
+
+	/**
+	 * @return a new, mutable copy of the DFA
+	 */
+	public DFA toDFA(){
+		return dfa.copy();
+	}
+
+	/**
+	 * @return a new, minimal DFA for the same language
+	 */
+	public DFA minimize(){
+		return dfa.minimize();
+	}
+
+	/**
+	 * @param other another snapshot
+	 * @return true if both accept the same strings
+	 */
+	public boolean isEquivalent(DFASnapshot other){
+		return differenceWitness(other) == null;
+	}
+
+	/**
+	 * The witness is spelled as in DFA.differenceWitness: a lone "e"
+	 * reads as the empty string in accepts, so check it with matcher().
+	 * @param other another snapshot
+	 * @return a string accepted by exactly one of them, "" for the
+	 * empty string, or null if they are equivalent
+	 */
+	public String differenceWitness(DFASnapshot other){
+		return new Equivalence(compiled, other.compiled).difference();
+	}
+
+	/**
+	 * @param other another snapshot
+	 * @return true if every string this one accepts is accepted by other
+	 */
+	public boolean isSubsetOf(DFASnapshot other){
+		return inclusionWitness(other) == null;
+	}
+
+	/**
+	 * The witness is spelled as in differenceWitness.
+	 * @param other another snapshot
+	 * @return a shortest string this one accepts and other rejects,
+	 * "" for the empty string, or null if there is none
+	 */
+	public String inclusionWitness(DFASnapshot other){
+		return new Equivalence(compiled, other.compiled).notIn();
+	}
+
+	/**
+	 * @return the number of states
+	 */
+	public int getStateCount(){
+		return compiled.getStateCount();
+	}
+
+	/**
+	 * @return the Q, Sigma, delta, q0 and F format of DFA.toString
+	 */
+	@Override
+	public String toString(){
+		return dfa.toString();
+	}
+
+	/**
+	 * @param out where the text goes
+	 * @throws IOException if out fails
+	 */
+	public void writeTo(Appendable out) throws IOException{
+		dfa.writeTo(out);
+	}
+
+	/**
+	 * @param out where the text goes, flushed but not closed
+	 * @throws IOException if writing fails
+	 */
+	public void writeTo(Writer out) throws IOException{
+		dfa.writeTo(out);
+	}
+
+	/**
+	 * @param out where the Graphviz digraph goes
+	 * @throws IOException if out fails
+	 */
+	public void writeDot(Appendable out) throws IOException{
+		dfa.writeDot(out);
+	}
+
+	/**
+	 * @param out where the JSON object goes
+	 * @throws IOException if out fails
+	 */
+	public void writeJson(Appendable out) throws IOException{
+		dfa.writeJson(out);
+	}
+}
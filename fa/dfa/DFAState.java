@@ -1,7 +1,9 @@
 package fa.dfa;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
+import fa.CharClass;
 import fa.State;
 
 /**
@@ -17,6 +19,8 @@ public class DFAState extends State{
 
 	private HashMap<Character,DFAState> delta;//delta
 	private boolean isFinal;//remembers its type
+	private ArrayList<CharClass> classLabels;//transitions on classes, null if none
+	private ArrayList<DFAState> classTargets;
 	
 	/**
 	 * Default constructor
@@ -67,12 +71,51 @@ public class DFAState extends State{
 	 * @return the new state 
 	 */
 	public DFAState getTo(char symb){
-		DFAState ret = delta.get(symb);
+		DFAState ret = next(symb);
 		if(ret == null){
 			 System.err.println("ERROR: DFAState.getTo(char symb) returns null on " + symb + " from " + name);
 			 System.exit(2);
 			}
-		return delta.get(symb);
+		return ret;
+	}
+
+	/**
+	 * Retrieves the state that <code>this</code> transitions to
+	 * on the given symbol, without treating a missing transition as an error
+	 * @param symb - the alphabet symbol
+	 * @return the new state or null if there is no transition on symb
+	 */
+	DFAState next(char symb){
+		DFAState ret = delta.get(symb);
+		if(ret == null && classLabels != null){
+			for(int i = 0; i < classLabels.size(); i++){
+				if(classLabels.get(i).contains(symb)){
+					return classTargets.get(i);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Adds the transition from <code> this </code> object
+	 * on every char of a class, replacing an earlier
+	 * transition on the same class
+	 * @param onClass the chars
+	 * @param toState to DFA state
+	 */
+	public void addTransition(CharClass onClass, DFAState toState){
+		if(classLabels == null){
+			classLabels = new ArrayList<CharClass>();
+			classTargets = new ArrayList<DFAState>();
+		}
+		int i = classLabels.indexOf(onClass);
+		if(i >= 0){
+			classTargets.set(i, toState);
+		} else {
+			classLabels.add(onClass);
+			classTargets.add(toState);
+		}
 	}
 	
 	
@@ -0,0 +1,249 @@
+package fa.dfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Compares the languages of two compiled DFAs over the lazily explored
+ * product of their states. Both DFAs get an implicit dead state for
+ * their missing transitions, and the chars of both alphabets are cut
+ * into joint symbol classes, so one representative char per joint class
+ * is enough. Pairs are explored breadth first from the pair of start
+ * states and the search stops at the first pair that tells the
+ * languages apart; the symbols leading to it spell the witness.
+ * A class is spelled by a char other than 'e' whenever it has one,
+ * and the class of 'e' is tried last.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+final class Equivalence {
+	private final CompiledDFA a;
+	private final CompiledDFA b;
+	/** the class of each joint symbol in a and b, -1 for none */
+	private final int[] classA;
+	private final int[] classB;
+	/** a char of each joint symbol */
+	private final char[] symbols;
+
+	//the explored pairs, in BFS order
+	private int[] left;
+	private int[] right;
+	private int[] parent;
+	private char[] via;
+	private int size;
+
+	/**
+	 * @param a the first DFA
+	 * @param b the second DFA
+	 */
+	Equivalence(CompiledDFA a, CompiledDFA b){
+		this.a = a;
+		this.b = b;
+		int len = Math.max(a.classOf.length, b.classOf.length);
+		HashMap<Long, Integer> joint = new HashMap<Long, Integer>();
+		int[] ca = new int[16];
+		int[] cb = new int[16];
+		char[] reps = new char[16];
+		for(int i = 0; i < len; i++){
+			//accepts reads a lone e as the empty string, so e comes last:
+			//it only spells a class that no other char is in, explored last
+			int c = i < 'e' ? i : i < len - 1 ? i + 1 : 'e';
+			int x = c < a.classOf.length ? a.classOf[c] : -1;
+			int y = c < b.classOf.length ? b.classOf[c] : -1;
+			if(x < 0 && y < 0){
+				continue;
+			}
+			long key = ((long) x << 32) | (y & 0xffffffffL);
+			if(!joint.containsKey(key)){
+				int j = joint.size();
+				if(j == ca.length){
+					ca = Arrays.copyOf(ca, j * 2);
+					cb = Arrays.copyOf(cb, j * 2);
+					reps = Arrays.copyOf(reps, j * 2);
+				}
+				ca[j] = x;
+				cb[j] = y;
+				reps[j] = (char) c;
+				joint.put(key, j);
+			}
+		}
+		classA = Arrays.copyOf(ca, joint.size());
+		classB = Arrays.copyOf(cb, joint.size());
+		symbols = Arrays.copyOf(reps, joint.size());
+		left = new int[16];
+		right = new int[16];
+		parent = new int[16];
+		via = new char[16];
+	}
+
+	/**
+	 * Hopcroft and Karp's check: a pair whose states are already in
+	 * one union-find class is known to agree and is not explored again,
+	 * so at most n + m + 1 pairs are explored
+	 * @return a string in exactly one language, or null if
+	 * the languages are equal
+	 */
+	String difference(){
+		int na = a.getStateCount();
+		int nb = b.getStateCount();
+		//a's states, a's dead state, b's states, b's dead state
+		int[] uf = new int[na + nb + 2];
+		for(int i = 0; i < uf.length; i++){
+			uf[i] = i;
+		}
+		int p = orDead(a.getStart(), na);
+		int q = orDead(b.getStart(), nb);
+		union(uf, p, na + 1 + q);
+		push(p, q, -1, '\0');
+		for(int i = 0; i < size; i++){
+			p = left[i];
+			q = right[i];
+			if(finalA(p) != finalB(q)){
+				return witness(i);
+			}
+			for(int s = 0; s < symbols.length; s++){
+				int p2 = stepA(p, s);
+				int q2 = stepB(q, s);
+				if(union(uf, p2, na + 1 + q2)){
+					push(p2, q2, i, symbols[s]);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Explores the product without merging pairs, which inclusion
+	 * needs since it is not an equivalence
+	 * @return a shortest string in a's language that is not in b's,
+	 * or null if there is none
+	 */
+	String notIn(){
+		int na = a.getStateCount();
+		int nb = b.getStateCount();
+		HashSet<Long> seen = new HashSet<Long>();
+		int p = orDead(a.getStart(), na);
+		int q = orDead(b.getStart(), nb);
+		seen.add((long) p * (nb + 1) + q);
+		push(p, q, -1, '\0');
+		for(int i = 0; i < size; i++){
+			p = left[i];
+			q = right[i];
+			if(finalA(p) && !finalB(q)){
+				return witness(i);
+			}
+			if(p == na){
+				//nothing is accepted from a's dead state
+				continue;
+			}
+			for(int s = 0; s < symbols.length; s++){
+				int p2 = stepA(p, s);
+				int q2 = stepB(q, s);
+				if(seen.add((long) p2 * (nb + 1) + q2)){
+					push(p2, q2, i, symbols[s]);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param s a state or DEAD
+	 * @param dead the id of the dead state
+	 * @return s, or the dead state
+	 */
+	private static int orDead(int s, int dead){
+		return s < 0 ? dead : s;
+	}
+
+	private boolean finalA(int p){
+		return p < a.getStateCount() && a.isFinal(p);
+	}
+
+	private boolean finalB(int q){
+		return q < b.getStateCount() && b.isFinal(q);
+	}
+
+	/**
+	 * @param p a state of a, or its dead state
+	 * @param s a joint symbol
+	 * @return the next state, or the dead state
+	 */
+	private int stepA(int p, int s){
+		int na = a.getStateCount();
+		int c = classA[s];
+		return p == na || c < 0 ? na : orDead(a.table[p * a.getAlphabetSize() + c], na);
+	}
+
+	/**
+	 * @param q a state of b, or its dead state
+	 * @param s a joint symbol
+	 * @return the next state, or the dead state
+	 */
+	private int stepB(int q, int s){
+		int nb = b.getStateCount();
+		int c = classB[s];
+		return q == nb || c < 0 ? nb : orDead(b.table[q * b.getAlphabetSize() + c], nb);
+	}
+
+	/**
+	 * @param uf the union-find forest
+	 * @param x an element
+	 * @param y an element
+	 * @return true if x and y were in different classes, which are merged
+	 */
+	private static boolean union(int[] uf, int x, int y){
+		x = find(uf, x);
+		y = find(uf, y);
+		if(x == y){
+			return false;
+		}
+		uf[x] = y;
+		return true;
+	}
+
+	private static int find(int[] uf, int x){
+		while(uf[x] != x){
+			uf[x] = uf[uf[x]];
+			x = uf[x];
+		}
+		return x;
+	}
+
+	/**
+	 * @param p the state of a
+	 * @param q the state of b
+	 * @param from the pair it was reached from, -1 for the start
+	 * @param c the char it was reached on
+	 */
+	private void push(int p, int q, int from, char c){
+		if(size == left.length){
+			left = Arrays.copyOf(left, size * 2);
+			right = Arrays.copyOf(right, size * 2);
+			parent = Arrays.copyOf(parent, size * 2);
+			via = Arrays.copyOf(via, size * 2);
+		}
+		left[size] = p;
+		right[size] = q;
+		parent[size] = from;
+		via[size] = c;
+		size++;
+	}
+
+	/**
+	 * @param i an explored pair
+	 * @return the chars leading from the start pair to it
+	 */
+	private String witness(int i){
+		int len = 0;
+		for(int j = i; parent[j] >= 0; j = parent[j]){
+			len++;
+		}
+		char[] s = new char[len];
+		for(; parent[i] >= 0; i = parent[i]){
+			s[--len] = via[i];
+		}
+		return new String(s);
+	}
+}
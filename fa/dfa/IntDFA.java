@@ -0,0 +1,79 @@
+package fa.dfa;
+
+import fa.FAStats;
+
+/**
+ * A DFA whose states are numbered 0..n-1 and whose transitions
+ * are looked up by number, whatever memory holds the table.
+ * As in DFA.accepts and NFA.accepts, the whole input "e" stands for
+ * the empty string, so every accepts method answers alike; the char
+ * 'e' inside a longer input, or fed to a DFAMatcher, is a plain char.
+ * Implementations are immutable, so they can be shared by threads.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public interface IntDFA {
+	/** the state id standing for a missing transition */
+	public static final int DEAD = -1;
+
+	/**
+	 * One transition of the DFA
+	 * @param state a state id, not DEAD
+	 * @param c the input character
+	 * @return the next state id, or DEAD
+	 */
+	public abstract int step(int state, char c);
+
+	/**
+	 * @param state a state id or DEAD
+	 * @return true if state is a final state
+	 */
+	public abstract boolean isFinal(int state);
+
+	/**
+	 * @return the start state id, DEAD if the DFA has none
+	 */
+	public abstract int getStart();
+
+	/**
+	 * @return the number of states
+	 */
+	public abstract int getStateCount();
+
+	/**
+	 * @return the number of symbol classes
+	 */
+	public abstract int getAlphabetSize();
+
+	/**
+	 * @param cls a symbol class
+	 * @return a character of that class
+	 */
+	public abstract char getSymbol(int cls);
+
+	/**
+	 * Runs the DFA over the whole sequence
+	 * @param input the input string, "e" stands for the empty string
+	 * @return true if input is in the language of the DFA
+	 */
+	public default boolean accepts(CharSequence input){
+		if(FAStats.isOn()){
+			FAStats.matched(input.length());
+		}
+		if("e".contentEquals(input)){
+			return isFinal(getStart());
+		}
+		int s = getStart();
+		for(int i = 0, len = input.length(); i < len && s != DEAD; i++){
+			s = step(s, input.charAt(i));
+		}
+		return isFinal(s);
+	}
+
+	/**
+	 * @return a new incremental matcher positioned at the start state
+	 */
+	public default DFAMatcher matcher(){
+		return new DFAMatcher(this);
+	}
+}
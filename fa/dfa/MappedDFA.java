@@ -0,0 +1,227 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A DFA read in place from a file in the DFAFile format. Every section
+ * is mapped on its own, and the sections that can outgrow one buffer,
+ * the transition table and the label offsets, are mapped in segments
+ * of at most SEGMENT ints, so files of any size can be read. Nothing
+ * is copied. The header is checked against the file size when it is
+ * mapped; the cells of the table are not, since that would read the
+ * whole file.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class MappedDFA implements IntDFA {
+	/** log2 of the most ints in one segment, 1 GB */
+	private static final int SHIFT = 28;
+	private static final int SEGMENT = 1 << SHIFT;
+	private static final long MASK = SEGMENT - 1;
+
+	private final int stateCount;
+	private final int alphabetSize;
+	private final int start;
+	private final ByteBuffer symbols;
+	private final IntBuffer classOf;
+	private final LongBuffer finals;
+	private final IntBuffer[] table;
+	private final IntBuffer[] labelOffsets;
+	private final ByteBuffer labels;
+
+	/**
+	 * @param ch a file in the DFAFile format, which may be closed afterwards
+	 * @throws IOException if the file cannot be mapped or does not hold
+	 * a well formed DFA of a known version
+	 */
+	MappedDFA(FileChannel ch) throws IOException{
+		long size = ch.size();
+		if(size < DFAFile.HEADER){
+			throw new IOException("Not a DFA file");
+		}
+		ByteBuffer header = map(ch, 0, DFAFile.HEADER);
+		if(header.getInt(0) != DFAFile.MAGIC){
+			throw new IOException("Not a DFA file");
+		}
+		if(header.getInt(4) != DFAFile.VERSION){
+			throw new IOException("Unsupported DFA file version " + header.getInt(4));
+		}
+		int flags = header.getInt(8);
+		stateCount = header.getInt(12);
+		alphabetSize = header.getInt(16);
+		start = header.getInt(20);
+		int classOfLength = header.getInt(24);
+		if((flags & ~DFAFile.LABELS) != 0){
+			throw new IOException("Unknown DFA file flags " + flags);
+		}
+		if(stateCount < 0 || alphabetSize < 0 || alphabetSize > Character.MAX_VALUE + 1){
+			throw new IOException("Bad DFA file size " + stateCount + " states, " + alphabetSize + " classes");
+		}
+		if(start != DEAD && (start < 0 || start >= stateCount)){
+			throw new IOException("Bad DFA file start state " + start);
+		}
+		if(classOfLength < 0 || classOfLength > Character.MAX_VALUE + 1){
+			throw new IOException("Bad DFA file class table length " + classOfLength);
+		}
+		boolean hasLabels = (flags & DFAFile.LABELS) != 0;
+
+		//the end of every section, checked before anything is mapped
+		long symbolsAt = DFAFile.HEADER;
+		long classOfAt = DFAFile.align(symbolsAt + 2L * alphabetSize);
+		long finalsAt = DFAFile.align(classOfAt + 4L * classOfLength);
+		long finalWords = (stateCount + 63L) >>> 6;
+		long tableAt = finalsAt + 8L * finalWords;
+		long cells = (long) stateCount * alphabetSize;
+		long offsetsAt = DFAFile.align(tableAt + 4L * cells);
+		long labelsAt = DFAFile.align(offsetsAt + 4L * (stateCount + 1L));
+		if((hasLabels ? labelsAt : offsetsAt) > size){
+			throw new IOException("Truncated DFA file");
+		}
+
+		symbols = map(ch, symbolsAt, 2L * alphabetSize);
+		classOf = map(ch, classOfAt, 4L * classOfLength).asIntBuffer();
+		for(int c = 0; c < classOfLength; c++){
+			if(classOf.get(c) < -1 || classOf.get(c) >= alphabetSize){
+				throw new IOException("Bad DFA file class " + classOf.get(c) + " of char " + c);
+			}
+		}
+		finals = map(ch, finalsAt, 8L * finalWords).asLongBuffer();
+		table = segments(ch, tableAt, cells);
+		if(hasLabels){
+			labelOffsets = segments(ch, offsetsAt, stateCount + 1L);
+			long first = offset(0);
+			long last = offset(stateCount);
+			if(first != 0 || last < 0 || labelsAt + last > size){
+				throw new IOException("Truncated DFA file labels");
+			}
+			labels = map(ch, labelsAt, last);
+		} else {
+			labelOffsets = null;
+			labels = null;
+		}
+	}
+
+	/**
+	 * @param ch the file
+	 * @param at the first byte of a section
+	 * @param length its length in bytes, below 2 GB
+	 * @return a little endian mapping of the section
+	 */
+	private static ByteBuffer map(FileChannel ch, long at, long length) throws IOException{
+		return ch.map(FileChannel.MapMode.READ_ONLY, at, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @param ch the file
+	 * @param at the first byte of a section of ints
+	 * @param ints the number of ints
+	 * @return the section mapped in segments of SEGMENT ints, the last one shorter
+	 */
+	private static IntBuffer[] segments(FileChannel ch, long at, long ints) throws IOException{
+		IntBuffer[] segments = new IntBuffer[(int) ((ints + SEGMENT - 1) >>> SHIFT)];
+		for(int i = 0; i < segments.length; i++){
+			long first = (long) i << SHIFT;
+			segments[i] = map(ch, at + 4L * first, 4L * Math.min(SEGMENT, ints - first)).asIntBuffer();
+		}
+		return segments;
+	}
+
+	/**
+	 * @param i an index into the table
+	 * @return the cell
+	 */
+	private int cell(long i){
+		return table[(int) (i >>> SHIFT)].get((int) (i & MASK));
+	}
+
+	/**
+	 * @param state a state id, or stateCount for the end
+	 * @return where its label starts in the label bytes
+	 */
+	private int offset(long state){
+		return labelOffsets[(int) (state >>> SHIFT)].get((int) (state & MASK));
+	}
+
+	@Override
+	public int step(int state, char c){
+		int cls = c < classOf.limit() ? classOf.get(c) : -1;
+		return cls < 0 ? DEAD : cell((long) state * alphabetSize + cls);
+	}
+
+	@Override
+	public boolean isFinal(int state){
+		return state >= 0 && (finals.get(state >>> 6) & (1L << state)) != 0;
+	}
+
+	@Override
+	public int getStart(){
+		return start;
+	}
+
+	@Override
+	public int getStateCount(){
+		return stateCount;
+	}
+
+	@Override
+	public int getAlphabetSize(){
+		return alphabetSize;
+	}
+
+	@Override
+	public char getSymbol(int cls){
+		return symbols.getChar(2 * cls);
+	}
+
+	/**
+	 * @param state a state id
+	 * @return the name of the state, or null if the file has no labels
+	 * @throws IllegalStateException if the label offsets are corrupt
+	 */
+	public String getLabel(int state){
+		if(labelOffsets == null){
+			return null;
+		}
+		int from = offset(state);
+		int to = offset(state + 1L);
+		if(from < 0 || to < from || to > labels.limit()){
+			throw new IllegalStateException("Corrupt label of state " + state);
+		}
+		byte[] bytes = new byte[to - from];
+		labels.get(from, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Copies the tables onto the heap
+	 * @return an equivalent compiled DFA
+	 * @throws IllegalStateException if the table has 2^31 cells or more
+	 */
+	public CompiledDFA toCompiledDFA(){
+		long cells = (long) stateCount * alphabetSize;
+		if(cells > Integer.MAX_VALUE - 8){
+			throw new IllegalStateException("Too many cells for a CompiledDFA: " + cells);
+		}
+		int[] t = new int[(int) cells];
+		int at = 0;
+		for(IntBuffer segment : table){
+			segment.get(0, t, at, segment.limit());
+			at += segment.limit();
+		}
+		int[] c = new int[classOf.limit()];
+		classOf.get(0, c);
+		long[] f = new long[finals.limit()];
+		finals.get(0, f);
+		char[] chars = new char[alphabetSize];
+		for(int i = 0; i < alphabetSize; i++){
+			chars[i] = getSymbol(i);
+		}
+		return new CompiledDFA(t, c, f, chars, stateCount, start);
+	}
+}
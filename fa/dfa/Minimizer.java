@@ -0,0 +1,188 @@
+package fa.dfa;
+
+import java.util.Arrays;
+
+/**
+ * Hopcroft's partition refinement over an int indexed DFA.
+ * The DFA is given as a flat table where the transition of state s
+ * on symbol c is table[s * k + c], and -1 is a missing transition.
+ * Missing transitions go to an extra dead state with id n, so the
+ * refinement always runs on a complete DFA.
+ * Runs in O(n * k * log n).
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class Minimizer {
+
+	private Minimizer(){
+	}
+
+	/**
+	 * Groups the states reachable from start into blocks of equivalent states.
+	 * Blocks are numbered in the order of their smallest state id, the dead
+	 * state counting as id n.
+	 * @param table the transition table, -1 for a missing transition
+	 * @param k the number of symbols
+	 * @param n the number of states
+	 * @param finals bitset of the final states
+	 * @param start the start state
+	 * @return the block of every state, with the dead state at index n,
+	 * or -1 for states that cannot be reached from start
+	 */
+	public static int[] partition(int[] table, int k, int n, long[] finals, int start){
+		int dead = n;
+		//find the reachable states, compacting their ids
+		int[] compact = new int[n + 1];
+		Arrays.fill(compact, -1);
+		int[] orig = new int[n + 1];
+		int m = 0;
+		compact[start] = m;
+		orig[m++] = start;
+		for(int i = 0; i < m; i++){
+			int s = orig[i];
+			for(int c = 0; c < k; c++){
+				int t = s == dead ? dead : table[s * k + c];
+				if(t < 0){
+					t = dead;
+				}
+				if(compact[t] < 0){
+					compact[t] = m;
+					orig[m++] = t;
+				}
+			}
+		}
+
+		//compacted transitions and their inverse, grouped by (target, symbol)
+		int[] next = new int[m * k];
+		int[] predOff = new int[m * k + 1];
+		for(int i = 0; i < m; i++){
+			int s = orig[i];
+			for(int c = 0; c < k; c++){
+				int t = s == dead ? dead : table[s * k + c];
+				next[i * k + c] = compact[t < 0 ? dead : t];
+				predOff[next[i * k + c] * k + c + 1]++;
+			}
+		}
+		for(int i = 0; i < m * k; i++){
+			predOff[i + 1] += predOff[i];
+		}
+		int[] pred = new int[m * k];
+		int[] fill = Arrays.copyOf(predOff, m * k);
+		for(int i = 0; i < m; i++){
+			for(int c = 0; c < k; c++){
+				pred[fill[next[i * k + c] * k + c]++] = i;
+			}
+		}
+
+		//the partition is a permutation of the states, each block a range of it
+		int[] elems = new int[m];
+		int[] loc = new int[m];
+		int[] blk = new int[m];
+		int[] first = new int[m];
+		int[] end = new int[m];
+		int[] marked = new int[m];
+		int lo = 0;
+		int hi = m;
+		for(int i = 0; i < m; i++){
+			int s = orig[i];
+			boolean f = s != dead && (finals[s >>> 6] & (1L << s)) != 0;
+			int at = f ? lo++ : --hi;
+			elems[at] = i;
+		}
+		int blocks = 0;
+		if(lo > 0){
+			first[blocks] = 0;
+			end[blocks++] = lo;
+		}
+		if(lo < m){
+			first[blocks] = lo;
+			end[blocks++] = m;
+		}
+		for(int b = 0; b < blocks; b++){
+			for(int j = first[b]; j < end[b]; j++){
+				blk[elems[j]] = b;
+				loc[elems[j]] = j;
+			}
+		}
+
+		int[] work = new int[m];
+		boolean[] inWork = new boolean[m];
+		int top = 0;
+		if(blocks == 2){
+			int smaller = end[0] - first[0] <= end[1] - first[1] ? 0 : 1;
+			work[top++] = smaller;
+			inWork[smaller] = true;
+		}
+		int[] splitter = new int[m];
+		int[] touched = new int[m];
+		while(top > 0){
+			int b = work[--top];
+			inWork[b] = false;
+			int size = end[b] - first[b];
+			System.arraycopy(elems, first[b], splitter, 0, size);
+			for(int c = 0; c < k; c++){
+				int touchedCount = 0;
+				for(int j = 0; j < size; j++){
+					int t = splitter[j];
+					for(int p = predOff[t * k + c]; p < predOff[t * k + c + 1]; p++){
+						int s = pred[p];
+						int sb = blk[s];
+						int boundary = first[sb] + marked[sb];
+						if(loc[s] >= boundary){
+							//move s into the marked front of its block
+							int other = elems[boundary];
+							elems[loc[s]] = other;
+							loc[other] = loc[s];
+							elems[boundary] = s;
+							loc[s] = boundary;
+							if(marked[sb]++ == 0){
+								touched[touchedCount++] = sb;
+							}
+						}
+					}
+				}
+				for(int i = 0; i < touchedCount; i++){
+					int sb = touched[i];
+					int mark = marked[sb];
+					marked[sb] = 0;
+					if(mark == end[sb] - first[sb]){
+						continue;
+					}
+					//the smaller part becomes the new block
+					int nb = blocks++;
+					if(mark <= end[sb] - first[sb] - mark){
+						first[nb] = first[sb];
+						end[nb] = first[sb] + mark;
+						first[sb] = end[nb];
+					} else {
+						first[nb] = first[sb] + mark;
+						end[nb] = end[sb];
+						end[sb] = first[nb];
+					}
+					for(int j = first[nb]; j < end[nb]; j++){
+						blk[elems[j]] = nb;
+					}
+					work[top++] = nb;
+					inWork[nb] = true;
+				}
+			}
+		}
+
+		//number the blocks by their smallest original state id
+		int[] ret = new int[n + 1];
+		Arrays.fill(ret, -1);
+		int[] renumber = new int[blocks];
+		Arrays.fill(renumber, -1);
+		int count = 0;
+		for(int s = 0; s <= n; s++){
+			int i = compact[s];
+			if(i >= 0){
+				if(renumber[blk[i]] < 0){
+					renumber[blk[i]] = count++;
+				}
+				ret[s] = renumber[blk[i]];
+			}
+		}
+		return ret;
+	}
+}
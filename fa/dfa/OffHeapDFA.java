@@ -0,0 +1,269 @@
+package fa.dfa;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import fa.CharClass;
+
+/**
+ * A table driven DFA whose transitions and final states live outside
+ * the heap, in direct buffers, so DFAs with tens of millions of states
+ * neither need a large heap nor slow down the garbage collector.
+ * Cells are addressed with longs and spread over buffers of at most
+ * CHUNK ints, so the table may hold more than 2^31 cells; only the
+ * state ids themselves are ints. The memory is bounded by
+ * -XX:MaxDirectMemorySize and is freed once the DFA is collected.
+ * Instances are immutable and can be shared by threads.
+ * @author Sam Jackson and Jeremy Bouchard
+ *
+ */
+public final class OffHeapDFA implements IntDFA {
+	/** log2 of the most ints in one buffer, 1 GB */
+	private static final int SHIFT = 28;
+	private static final int CHUNK = 1 << SHIFT;
+	private static final long MASK = CHUNK - 1;
+
+	private final IntBuffer[] table;
+	private final IntBuffer[] finals;
+	private final int[] classOf;
+	private final char[] symbols;
+	private final int stateCount;
+	private final int start;
+
+	/**
+	 * Fills an off-heap table one transition at a time, growing it
+	 * as states are added, e.g. while the subset construction runs.
+	 * A builder is not thread safe.
+	 */
+	public static final class Builder {
+		private final int[] classOf;
+		private final char[] symbols;
+		private final Ints table;
+		private final Ints finals;
+
+		/**
+		 * @param labels the chars of each symbol class, disjoint
+		 */
+		public Builder(CharClass[] labels){
+			this.classOf = CompiledDFA.classOf(labels);
+			this.symbols = CompiledDFA.symbols(labels);
+			this.table = new Ints(-1);
+			this.finals = new Ints(0);
+		}
+
+		/**
+		 * @param state the source state id
+		 * @param cls the symbol class
+		 * @param to the next state id, or DEAD
+		 * @return this builder
+		 */
+		public Builder setTransition(int state, int cls, int to){
+			table.set((long) state * symbols.length + cls, to);
+			return this;
+		}
+
+		/**
+		 * @param state a state id
+		 * @return this builder
+		 */
+		public Builder setFinal(int state){
+			finals.set(state >>> 5, finals.get(state >>> 5) | (1 << state));
+			return this;
+		}
+
+		/**
+		 * Transitions that were never set are missing. The builder
+		 * must not be used afterwards.
+		 * @param stateCount the number of states
+		 * @param start the start state id, or DEAD
+		 * @return the DFA
+		 */
+		public OffHeapDFA build(int stateCount, int start){
+			table.ensure((long) stateCount * symbols.length);
+			finals.ensure((stateCount + 31) >>> 5);
+			return new OffHeapDFA(table.chunks(), finals.chunks(), classOf, symbols, stateCount, start);
+		}
+	}
+
+	/**
+	 * A growable array of ints in direct buffers. Every buffer but
+	 * the last holds CHUNK ints; the last one doubles until it does.
+	 */
+	private static final class Ints {
+		/** ints written at a time when filling or copying */
+		private static final int RUN = 1 << 13;
+
+		private final int fill;
+		/** RUN fill values, null if the fill is 0 */
+		private final int[] pattern;
+		private IntBuffer[] chunks = new IntBuffer[0];
+		private long capacity;
+
+		/**
+		 * @param fill the value of cells never set
+		 */
+		Ints(int fill){
+			this.fill = fill;
+			if(fill != 0){
+				pattern = new int[RUN];
+				Arrays.fill(pattern, fill);
+			} else {
+				pattern = null;
+			}
+		}
+
+		int get(long i){
+			return i < capacity ? chunks[(int) (i >>> SHIFT)].get((int) (i & MASK)) : fill;
+		}
+
+		void set(long i, int value){
+			ensure(i + 1);
+			chunks[(int) (i >>> SHIFT)].put((int) (i & MASK), value);
+		}
+
+		/**
+		 * Copies an array into the cells from at on, a chunk at a time
+		 * @param at the first cell
+		 * @param src the values
+		 */
+		void put(long at, int[] src){
+			ensure(at + src.length);
+			for(int done = 0; done < src.length;){
+				long i = at + done;
+				int len = (int) Math.min(src.length - done, CHUNK - (i & MASK));
+				chunks[(int) (i >>> SHIFT)].put((int) (i & MASK), src, done, len);
+				done += len;
+			}
+		}
+
+		/**
+		 * @param size the number of cells needed
+		 */
+		void ensure(long size){
+			while(capacity < size){
+				int last = chunks.length - 1;
+				if(last >= 0 && chunks[last].capacity() < CHUNK){
+					IntBuffer old = chunks[last];
+					chunks[last] = allocate((int) Math.min(CHUNK, Math.max(2L * old.capacity(), size - ((long) last << SHIFT))), old.capacity());
+					chunks[last].put(old.rewind());
+					chunks[last].clear();
+				} else {
+					chunks = Arrays.copyOf(chunks, chunks.length + 1);
+					chunks[last + 1] = allocate((int) Math.min(CHUNK, Math.max(1024, size - ((long) (last + 1) << SHIFT))), 0);
+				}
+				last = chunks.length - 1;
+				capacity = ((long) last << SHIFT) + chunks[last].capacity();
+			}
+		}
+
+		/**
+		 * @param ints the number of ints
+		 * @param from the first int to fill, those before are copied over
+		 * @return a direct buffer of fill values from from on
+		 */
+		private IntBuffer allocate(int ints, int from){
+			IntBuffer b = ByteBuffer.allocateDirect(4 * ints).order(ByteOrder.nativeOrder()).asIntBuffer();
+			if(pattern != null){
+				for(int i = from; i < ints; i += RUN){
+					b.put(i, pattern, 0, Math.min(RUN, ints - i));
+				}
+			}
+			return b;
+		}
+
+		IntBuffer[] chunks(){
+			return chunks;
+		}
+	}
+
+	/**
+	 * @param table the transitions, state * symbols + class
+	 * @param finals the bitset of the final states
+	 * @param classOf the class of each char, -1 for none
+	 * @param symbols a char of each class
+	 * @param stateCount the number of states
+	 * @param start the start state id, or DEAD
+	 */
+	private OffHeapDFA(IntBuffer[] table, IntBuffer[] finals, int[] classOf, char[] symbols, int stateCount, int start){
+		this.table = table;
+		this.finals = finals;
+		this.classOf = classOf;
+		this.symbols = symbols;
+		this.stateCount = stateCount;
+		this.start = start;
+	}
+
+	/**
+	 * Copies a compiled DFA out of the heap
+	 * @param dfa the DFA to copy
+	 * @return the off-heap DFA
+	 */
+	public static OffHeapDFA of(CompiledDFA dfa){
+		int n = dfa.getStateCount();
+		Ints table = new Ints(-1);
+		table.put(0, dfa.table);
+		//the long words of the bitset, split into their low and high ints
+		int[] words = new int[(n + 31) >>> 5];
+		for(int w = 0; w < words.length; w++){
+			words[w] = (int) (dfa.finals[w >>> 1] >>> (32 * (w & 1)));
+		}
+		Ints finals = new Ints(0);
+		finals.put(0, words);
+		return new OffHeapDFA(table.chunks(), finals.chunks(), dfa.classOf.clone(), dfa.symbols.clone(), dfa.getStateCount(), dfa.getStart());
+	}
+
+	@Override
+	public int step(int state, char c){
+		int cls = c < classOf.length ? classOf[c] : -1;
+		if(cls < 0){
+			return DEAD;
+		}
+		long i = (long) state * symbols.length + cls;
+		return table[(int) (i >>> SHIFT)].get((int) (i & MASK));
+	}
+
+	@Override
+	public boolean isFinal(int state){
+		if(state < 0){
+			return false;
+		}
+		int w = state >>> 5;
+		return (finals[w >>> SHIFT].get(w & (int) MASK) & (1 << state)) != 0;
+	}
+
+	@Override
+	public int getStart(){
+		return start;
+	}
+
+	@Override
+	public int getStateCount(){
+		return stateCount;
+	}
+
+	@Override
+	public int getAlphabetSize(){
+		return symbols.length;
+	}
+
+	@Override
+	public char getSymbol(int cls){
+		return symbols[cls];
+	}
+
+	/**
+	 * @return the bytes of direct memory held by the DFA
+	 */
+	public long getOffHeapBytes(){
+		long bytes = 0;
+		for(IntBuffer b : table){
+			bytes += 4L * b.capacity();
+		}
+		for(IntBuffer b : finals){
+			bytes += 4L * b.capacity();
+		}
+		return bytes;
+	}
+}
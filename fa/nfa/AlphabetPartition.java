@@ -0,0 +1,161 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Set;
+
+import fa.CharClass;
+
+/**
+ * The coarsest partition of the chars on an NFA's transitions into
+ * symbol classes: two chars share a class exactly when every
+ * transition label holds both or neither of them. The range bounds
+ * of all labels cut the chars into elementary intervals, each
+ * interval gets the bitset of the class labels holding it, and
+ * intervals with equal bitsets are merged. Every char of the plain
+ * alphabet is a label of its own, so it stays a class of its own
+ * and keeps its place in the alphabet's iteration order; the merged
+ * classes follow, ordered by their smallest char.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class AlphabetPartition
+{
+    /** a char of each class */
+    final char[] symbols;
+    /** the chars of each class */
+    final CharClass[] labels;
+    /** the class of each char below its length, -1 for none */
+    final int[] classOf;
+
+    /**
+     * @param alphabet the chars of single char transitions, without 'e'
+     * @param classes the labels of class transitions
+     */
+    AlphabetPartition(Set<Character> alphabet, Collection<CharClass> classes)
+    {
+        int[] points = new int[2 * alphabet.size() + 2 * rangeCount(classes)];
+        int p = 0;
+        for(char c : alphabet)
+        {
+            points[p++] = c;
+            points[p++] = c + 1;
+        }
+        for(CharClass cls : classes)
+        {
+            for(int i = 0; i < cls.rangeCount(); i++)
+            {
+                points[p++] = cls.rangeStart(i);
+                points[p++] = cls.rangeEnd(i) + 1;
+            }
+        }
+        Arrays.sort(points);
+        int distinct = 0;
+        for(int i = 0; i < points.length; i++)
+        {
+            if(distinct == 0 || points[i] != points[distinct - 1])
+            {
+                points[distinct++] = points[i];
+            }
+        }
+        int intervals = Math.max(0, distinct - 1);
+
+        //mark the class labels holding each elementary interval
+        int words = StateSet.wordsFor(classes.size());
+        long[] marks = new long[intervals * words];
+        int label = 0;
+        for(CharClass cls : classes)
+        {
+            for(int i = 0; i < cls.rangeCount(); i++)
+            {
+                int from = Arrays.binarySearch(points, 0, distinct, cls.rangeStart(i));
+                int to = Arrays.binarySearch(points, 0, distinct, cls.rangeEnd(i) + 1);
+                for(int v = from; v < to; v++)
+                {
+                    marks[v * words + (label >>> 6)] |= 1L << label;
+                }
+            }
+            label++;
+        }
+
+        classOf = new int[distinct == 0 ? 0 : points[distinct - 1]];
+        Arrays.fill(classOf, -1);
+        int k = alphabet.size();
+        ArrayList<CharClass> merged = new ArrayList<>();
+        ArrayList<char[]> bounds = new ArrayList<>();
+        HashMap<StateSet, Integer> classOfMarks = new HashMap<>();
+        int[] count = new int[intervals];
+        for(int v = 0; v < intervals; v++)
+        {
+            int lo = points[v];
+            if(points[v + 1] == lo + 1 && alphabet.contains((char) lo))
+            {
+                continue;
+            }
+            StateSet key = StateSet.copyOf(Arrays.copyOfRange(marks, v * words, (v + 1) * words));
+            if(key.isEmpty())
+            {
+                continue;
+            }
+            Integer cls = classOfMarks.get(key);
+            if(cls == null)
+            {
+                cls = bounds.size();
+                classOfMarks.put(key, cls);
+                bounds.add(new char[4]);
+            }
+            char[] b = bounds.get(cls);
+            if(2 * count[cls] + 2 > b.length)
+            {
+                b = Arrays.copyOf(b, b.length * 2);
+                bounds.set(cls, b);
+            }
+            b[2 * count[cls]] = (char) lo;
+            b[2 * count[cls] + 1] = (char) (points[v + 1] - 1);
+            count[cls]++;
+            Arrays.fill(classOf, lo, points[v + 1], k + cls);
+        }
+        for(int cls = 0; cls < bounds.size(); cls++)
+        {
+            char[] b = bounds.get(cls);
+            char[] lo = new char[count[cls]];
+            char[] hi = new char[count[cls]];
+            for(int i = 0; i < count[cls]; i++)
+            {
+                lo[i] = b[2 * i];
+                hi[i] = b[2 * i + 1];
+            }
+            merged.add(CharClass.ofRanges(lo, hi, count[cls]));
+        }
+
+        symbols = new char[k + merged.size()];
+        labels = new CharClass[symbols.length];
+        int c = 0;
+        for(char a : alphabet)
+        {
+            classOf[a] = c;
+            symbols[c] = a;
+            labels[c++] = CharClass.of(a);
+        }
+        for(CharClass cls : merged)
+        {
+            symbols[c] = cls.first();
+            labels[c++] = cls;
+        }
+    }
+
+    /**
+     * @param classes class labels
+     * @return the number of ranges in all of them
+     */
+    private static int rangeCount(Collection<CharClass> classes)
+    {
+        int n = 0;
+        for(CharClass cls : classes)
+        {
+            n += cls.rangeCount();
+        }
+        return n;
+    }
+}
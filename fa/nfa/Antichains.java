@@ -0,0 +1,321 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import fa.CharClass;
+
+/**
+ * Universality and inclusion checks that run on the NFAs themselves,
+ * following the antichain algorithms of De Wulf, Doyen, Henzinger and
+ * Raskin. Like the subset construction they explore closed subsets
+ * breadth first, but a subset is only kept if no kept subset is
+ * smaller: whatever a larger subset rejects, a smaller one rejects too,
+ * so only the minimal subsets, an antichain, need to be explored and
+ * most of the subsets the DFA would have are never built.
+ * Inclusion explores pairs of a state of the first NFA and a subset of
+ * the second one, compared per state. The search stops at the first
+ * rejecting subset or pair and the symbols leading to it spell the
+ * counterexample, "" for the empty string. A symbol is spelled with a
+ * char other than 'e' whenever it has one, and the one spelled 'e' is
+ * tried last.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class Antichains
+{
+    /** the state of the first NFA of each explored node, 0 for universality */
+    private int[] state;
+    private StateSet[] sets;
+    private int[] parent;
+    private char[] via;
+    /** true once a smaller subset replaced the node in the antichain */
+    private boolean[] pruned;
+    private int size;
+    /** the nodes of the antichain of each state of the first NFA */
+    private final ArrayList<ArrayList<Integer>> chains;
+
+    /**
+     * @param keys the number of antichains
+     */
+    private Antichains(int keys)
+    {
+        state = new int[16];
+        sets = new StateSet[16];
+        parent = new int[16];
+        via = new char[16];
+        pruned = new boolean[16];
+        chains = new ArrayList<>(keys);
+        for(int i = 0; i < keys; i++)
+        {
+            chains.add(new ArrayList<Integer>());
+        }
+    }
+
+    /**
+     * @param nfa the indexed NFA
+     * @return a string over the alphabet of the NFA that it rejects,
+     * or null if it accepts every such string
+     */
+    static String universality(NFAIndex nfa)
+    {
+        Antichains x = new Antichains(1);
+        long[] scratch = new long[nfa.words];
+        char[] spelling = spelling(nfa);
+        int[] order = order(spelling);
+        x.offer(0, nfa.startSet(), -1, '\0');
+        for(int i = 0; i < x.size; i++)
+        {
+            if(x.pruned[i])
+            {
+                continue;
+            }
+            StateSet s = x.sets[i];
+            if(!nfa.isFinal(s))
+            {
+                return x.witness(i);
+            }
+            for(int c : order)
+            {
+                StateSet next = new StateSet(nfa.step(s, c, scratch));
+                if(!x.subsumed(0, next))
+                {
+                    x.offer(0, StateSet.copyOf(scratch), i, spelling[c]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param a the indexed NFA whose language should be included
+     * @param b the indexed NFA whose language should include it
+     * @return a string a accepts and b rejects, or null if there is none
+     */
+    static String inclusion(NFAIndex a, NFAIndex b)
+    {
+        if(a.start < 0)
+        {
+            return null;
+        }
+        //cut the symbols of a by those of b, one char stands for each pair
+        int limit = Math.max(limit(a), limit(b));
+        HashMap<Long, Integer> joint = new HashMap<>();
+        int[] classA = new int[16];
+        int[] classB = new int[16];
+        char[] reps = new char[16];
+        for(int i = 0; i < limit; i++)
+        {
+            //e comes last, so it only spells a pair no other char is in, explored last
+            int ch = i < 'e' ? i : i < limit - 1 ? i + 1 : 'e';
+            int x = a.symbolOf((char) ch);
+            if(x < 0)
+            {
+                //a cannot read the char, so no counterexample holds it
+                continue;
+            }
+            int y = b.symbolOf((char) ch);
+            long key = ((long) x << 32) | (y & 0xffffffffL);
+            if(!joint.containsKey(key))
+            {
+                int j = joint.size();
+                if(j == classA.length)
+                {
+                    classA = Arrays.copyOf(classA, j * 2);
+                    classB = Arrays.copyOf(classB, j * 2);
+                    reps = Arrays.copyOf(reps, j * 2);
+                }
+                classA[j] = x;
+                classB[j] = y;
+                reps[j] = (char) ch;
+                joint.put(key, j);
+            }
+        }
+        int symbols = joint.size();
+        int k = a.symbols.length;
+
+        Antichains x = new Antichains(a.states.length);
+        long[] scratch = new long[b.words];
+        StateSet empty = new StateSet(new long[b.words]);
+        StateSet start = b.startSet();
+        for(int p : a.closure(a.start))
+        {
+            x.offer(p, start, -1, '\0');
+        }
+        for(int i = 0; i < x.size; i++)
+        {
+            if(x.pruned[i])
+            {
+                continue;
+            }
+            int p = x.state[i];
+            StateSet s = x.sets[i];
+            if(a.isFinal(p) && !b.isFinal(s))
+            {
+                return x.witness(i);
+            }
+            for(int j = 0; j < symbols; j++)
+            {
+                int row = p * k + classA[j];
+                if(a.offsets[row] == a.offsets[row + 1])
+                {
+                    continue;
+                }
+                StateSet next = classB[j] < 0 ? empty : StateSet.copyOf(b.step(s, classB[j], scratch));
+                for(int t = a.offsets[row]; t < a.offsets[row + 1]; t++)
+                {
+                    for(int q : a.closure(a.targets[t]))
+                    {
+                        x.offer(q, next, i, reps[j]);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the char each symbol is spelled with in a counterexample:
+     * one other than 'e' where the symbol has one, since accepts reads
+     * a lone e as the empty string
+     * @param nfa an indexed NFA
+     * @return a char of each symbol
+     */
+    private static char[] spelling(NFAIndex nfa)
+    {
+        char[] spelling = nfa.symbols.clone();
+        for(int c = 0; c < spelling.length; c++)
+        {
+            CharClass label = nfa.labels[c];
+            for(int r = 0; r < label.rangeCount() && spelling[c] == 'e'; r++)
+            {
+                if(label.rangeStart(r) != 'e')
+                {
+                    spelling[c] = label.rangeStart(r);
+                }
+                else if(label.rangeEnd(r) != 'e')
+                {
+                    spelling[c] = 'f';
+                }
+            }
+        }
+        return spelling;
+    }
+
+    /**
+     * @param spelling a char of each symbol
+     * @return the symbols, with the one spelled 'e' last
+     */
+    private static int[] order(char[] spelling)
+    {
+        int[] order = new int[spelling.length];
+        int m = 0;
+        for(int c = 0; c < spelling.length; c++)
+        {
+            if(spelling[c] != 'e')
+            {
+                order[m++] = c;
+            }
+        }
+        for(int c = 0; c < spelling.length; c++)
+        {
+            if(spelling[c] == 'e')
+            {
+                order[m++] = c;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @param nfa an indexed NFA
+     * @return one more than the largest char on its transitions
+     */
+    private static int limit(NFAIndex nfa)
+    {
+        int max = 0;
+        for(int c = 0; c < nfa.labels.length; c++)
+        {
+            int last = nfa.labels[c].rangeCount() - 1;
+            max = Math.max(max, nfa.labels[c].rangeEnd(last) + 1);
+        }
+        return max;
+    }
+
+    /**
+     * @param key the antichain
+     * @param set a subset
+     * @return true if the antichain holds a subset of set
+     */
+    private boolean subsumed(int key, StateSet set)
+    {
+        for(int id : chains.get(key))
+        {
+            if(sets[id].isSubsetOf(set))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a node unless the antichain holds a subset of its set, and
+     * drops the nodes whose sets hold it from the antichain
+     * @param key the antichain, the state of the first NFA
+     * @param set the subset, which must not change afterwards
+     * @param from the node it was reached from, -1 for the start
+     * @param c the char it was reached on
+     */
+    private void offer(int key, StateSet set, int from, char c)
+    {
+        if(subsumed(key, set))
+        {
+            return;
+        }
+        ArrayList<Integer> chain = chains.get(key);
+        for(int i = chain.size() - 1; i >= 0; i--)
+        {
+            int id = chain.get(i);
+            if(set.isSubsetOf(sets[id]))
+            {
+                pruned[id] = true;
+                chain.set(i, chain.get(chain.size() - 1));
+                chain.remove(chain.size() - 1);
+            }
+        }
+        if(size == sets.length)
+        {
+            state = Arrays.copyOf(state, size * 2);
+            sets = Arrays.copyOf(sets, size * 2);
+            parent = Arrays.copyOf(parent, size * 2);
+            via = Arrays.copyOf(via, size * 2);
+            pruned = Arrays.copyOf(pruned, size * 2);
+        }
+        state[size] = key;
+        sets[size] = set;
+        parent[size] = from;
+        via[size] = c;
+        chain.add(size);
+        size++;
+    }
+
+    /**
+     * @param i an explored node
+     * @return the chars leading from the start to it
+     */
+    private String witness(int i)
+    {
+        int len = 0;
+        for(int j = i; parent[j] >= 0; j = parent[j])
+        {
+            len++;
+        }
+        char[] s = new char[len];
+        for(; parent[i] >= 0; i = parent[i])
+        {
+            s[--len] = via[i];
+        }
+        return new String(s);
+    }
+}
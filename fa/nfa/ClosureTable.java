@@ -0,0 +1,141 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * The epsilon closures of all states of an indexed NFA.
+ * States on an epsilon cycle have the same closure, so the epsilon
+ * graph is first collapsed into its strongly connected components
+ * with an iterative version of Tarjan's algorithm. Tarjan finishes
+ * a component only after every component it reaches, so each closure
+ * is the union of the component's own states and the closures already
+ * computed for its successors. States of one component share one array.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class ClosureTable
+{
+    private final int[][] closures;
+
+    /**
+     * @param epsOffsets where the epsilon successors of each state id
+     * start in epsTargets, with one extra entry for the end
+     * @param epsTargets the epsilon successors of all states
+     * @param words the number of longs in a bitset over all ids
+     */
+    ClosureTable(int[] epsOffsets, int[] epsTargets, int words)
+    {
+        int n = epsOffsets.length - 1;
+        int[] sccOf = new int[n];
+        int[] order = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(order, -1);
+        int[] stack = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] callNode = new int[n];
+        int[] callEdge = new int[n];
+        int[][] found = new int[n][];
+        int sccs = 0;
+        int counter = 0;
+        int top = 0;
+        long[] scratch = new long[words];
+        int[] buf = new int[n];
+
+        for(int root = 0; root < n; root++)
+        {
+            if(order[root] >= 0)
+            {
+                continue;
+            }
+            int depth = 0;
+            callNode[0] = root;
+            callEdge[0] = epsOffsets[root];
+            order[root] = low[root] = counter++;
+            stack[top++] = root;
+            onStack[root] = true;
+            while(depth >= 0)
+            {
+                int u = callNode[depth];
+                if(callEdge[depth] < epsOffsets[u + 1])
+                {
+                    int v = epsTargets[callEdge[depth]++];
+                    if(order[v] < 0)
+                    {
+                        order[v] = low[v] = counter++;
+                        stack[top++] = v;
+                        onStack[v] = true;
+                        depth++;
+                        callNode[depth] = v;
+                        callEdge[depth] = epsOffsets[v];
+                    }
+                    else if(onStack[v])
+                    {
+                        low[u] = Math.min(low[u], order[v]);
+                    }
+                    continue;
+                }
+                if(low[u] == order[u])
+                {
+                    //u roots a component, every component it reaches is done
+                    int id = sccs++;
+                    int size = 0;
+                    int v;
+                    do
+                    {
+                        v = stack[--top];
+                        onStack[v] = false;
+                        sccOf[v] = id;
+                        buf[size++] = v;
+                        scratch[v >>> 6] |= 1L << v;
+                    } while(v != u);
+                    int members = size;
+                    for(int i = 0; i < members; i++)
+                    {
+                        for(int e = epsOffsets[buf[i]], end = epsOffsets[buf[i] + 1]; e < end; e++)
+                        {
+                            int w = epsTargets[e];
+                            if(sccOf[w] == id)
+                            {
+                                continue;
+                            }
+                            for(int x : found[sccOf[w]])
+                            {
+                                if((scratch[x >>> 6] & (1L << x)) == 0)
+                                {
+                                    scratch[x >>> 6] |= 1L << x;
+                                    buf[size++] = x;
+                                }
+                            }
+                        }
+                    }
+                    int[] closure = Arrays.copyOf(buf, size);
+                    Arrays.sort(closure);
+                    for(int x : closure)
+                    {
+                        scratch[x >>> 6] &= ~(1L << x);
+                    }
+                    found[id] = closure;
+                }
+                depth--;
+                if(depth >= 0)
+                {
+                    int parent = callNode[depth];
+                    low[parent] = Math.min(low[parent], low[u]);
+                }
+            }
+        }
+        closures = new int[n][];
+        for(int s = 0; s < n; s++)
+        {
+            closures[s] = found[sccOf[s]];
+        }
+    }
+
+    /**
+     * @param s a state id
+     * @return ids of the epsilon closure of s, including s
+     */
+    int[] closure(int s)
+    {
+        return closures[s];
+    }
+}
@@ -0,0 +1,68 @@
+package fa.nfa;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one run of the subset construction, from the
+ * start of the search to the finished DFA
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+@Name("fa.Determinize")
+@Label("Determinize NFA")
+@Category("Automata")
+@Description("One subset construction with its size and the time of each phase")
+class DeterminizeEvent extends jdk.jfr.Event
+{
+    @Label("NFA States")
+    int nfaStates;
+
+    @Label("Symbols")
+    int symbols;
+
+    @Label("Parallel")
+    boolean parallel;
+
+    @Label("Minimized")
+    boolean minimized;
+
+    @Label("Subsets Discovered")
+    int subsets;
+
+    @Label("Subset Transitions")
+    long transitions;
+
+    @Label("Dedupe Hits")
+    @Description("Successor subsets that were already in the table")
+    long dedupeHits;
+
+    @Label("Levels")
+    int levels;
+
+    @Label("Largest Frontier")
+    int largestFrontier;
+
+    @Label("Subset Table Size")
+    @Description("Estimated peak heap used by the subsets, their table and the transitions")
+    @DataAmount
+    long tableBytes;
+
+    @Label("DFA States")
+    int dfaStates;
+
+    @Label("Explore Time")
+    @Timespan
+    long exploreNanos;
+
+    @Label("Minimize Time")
+    @Timespan
+    long minimizeNanos;
+
+    @Label("Build Time")
+    @Timespan
+    long buildNanos;
+}
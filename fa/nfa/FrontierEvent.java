@@ -0,0 +1,27 @@
+package fa.nfa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one level of the subset construction's search,
+ * so the frontier can be followed over time
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+@Name("fa.Frontier")
+@Label("Subset Frontier")
+@Category("Automata")
+@Description("The subsets waiting to be expanded at the start of a search level")
+class FrontierEvent extends jdk.jfr.Event
+{
+    @Label("Level")
+    int level;
+
+    @Label("Frontier")
+    int frontier;
+
+    @Label("Subsets Discovered")
+    int subsets;
+}
@@ -0,0 +1,27 @@
+package fa.nfa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for indexing an NFA, which computes the epsilon
+ * closures of all its states
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+@Name("fa.IndexNFA")
+@Label("Index NFA")
+@Category("Automata")
+@Description("Numbering the states of an NFA and computing their epsilon closures")
+class IndexEvent extends jdk.jfr.Event
+{
+    @Label("NFA States")
+    int states;
+
+    @Label("Symbols")
+    int symbols;
+
+    @Label("Closures Computed")
+    int closures;
+}
@@ -0,0 +1,224 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import fa.FAStats;
+
+/**
+ * A DFA that is built on demand while strings are matched.
+ * Subset states and transitions are only computed when an input
+ * reaches them, and they are kept in a cache of bounded size.
+ * When the cache is full it is flushed and matching continues from
+ * the current subset, so an NFA whose full DFA would not fit in memory
+ * can still be matched at close to DFA speed on the subsets that the
+ * inputs actually visit.
+ * Instances are not thread safe, use one per thread.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+public final class LazyDFA
+{
+    private static final int UNKNOWN = -1;
+    /** the subset states room is first made for */
+    private static final int INITIAL = 64;
+
+    private final NFAIndex index;
+    private final int k;
+    private final int capacity;
+    private final StateSet startSet;
+    private final HashMap<StateSet, Integer> table;
+    /** grown by doubling up to capacity */
+    private StateSet[] subsets;
+    private int[] delta;
+    private boolean[] finals;
+    private final long[] scratch;
+    private int size;
+    private int start;
+    private long hits, misses, flushes;
+
+    /**
+     * @param index the NFA to match
+     * @param memoryBudget roughly the most bytes the cache may use
+     */
+    LazyDFA(NFAIndex index, long memoryBudget)
+    {
+        this.index = index;
+        this.k = index.symbols.length;
+        //subset words, a row of transitions and the hash table entry
+        long perState = 8L * index.words + 4L * k + 96;
+        this.capacity = (int) Math.max(2, Math.min((Integer.MAX_VALUE - 8) / Math.max(k, 1), memoryBudget / perState));
+        this.startSet = index.startSet();
+        this.table = new HashMap<>();
+        int rows = Math.min(capacity, INITIAL);
+        this.subsets = new StateSet[rows];
+        this.delta = new int[rows * k];
+        this.finals = new boolean[rows];
+        this.scratch = new long[index.words];
+        flush();
+        flushes = 0;
+    }
+
+    /**
+     * @param input the input string, "e" stands for the empty string
+     * @return true if the NFA accepts input
+     */
+    public boolean accepts(CharSequence input)
+    {
+        if(FAStats.isOn())
+        {
+            FAStats.matched(input.length());
+        }
+        if("e".contentEquals(input))
+        {
+            input = "";
+        }
+        if(start == UNKNOWN)
+        {
+            Integer id = table.get(startSet);
+            if(id == null)
+            {
+                if(size == capacity)
+                {
+                    flush();
+                }
+                id = intern(startSet);
+            }
+            start = id;
+        }
+        int s = start;
+        for(int i = 0, len = input.length(); i < len; i++)
+        {
+            int c = index.symbolOf(input.charAt(i));
+            if(c < 0)
+            {
+                return false;
+            }
+            int t = delta[s * k + c];
+            if(t == UNKNOWN)
+            {
+                misses++;
+                t = next(s, c);
+            }
+            else
+            {
+                hits++;
+            }
+            s = t;
+            if(subsets[s].isEmpty())
+            {
+                return false;
+            }
+        }
+        return finals[s];
+    }
+
+    /**
+     * Computes and caches a transition that is not cached yet
+     * @param s the source state
+     * @param c the symbol id
+     * @return the target state
+     */
+    private int next(int s, int c)
+    {
+        index.step(subsets[s], c, scratch);
+        Integer id = table.get(new StateSet(scratch));
+        if(id != null)
+        {
+            delta[s * k + c] = id;
+            return id;
+        }
+        StateSet target = StateSet.copyOf(scratch);
+        if(size == capacity)
+        {
+            //s is gone after the flush, so only the target is kept
+            flush();
+            return intern(target);
+        }
+        int t = intern(target);
+        delta[s * k + c] = t;
+        return t;
+    }
+
+    /**
+     * @param set a subset not in the cache
+     * @return the id it is cached under
+     */
+    private int intern(StateSet set)
+    {
+        if(size == subsets.length)
+        {
+            grow();
+        }
+        int id = size++;
+        subsets[id] = set;
+        finals[id] = index.isFinal(set);
+        table.put(set, id);
+        return id;
+    }
+
+    /**
+     * Doubles the room for subset states, up to capacity
+     */
+    private void grow()
+    {
+        int rows = (int) Math.min(capacity, 2L * subsets.length);
+        subsets = Arrays.copyOf(subsets, rows);
+        finals = Arrays.copyOf(finals, rows);
+        int old = delta.length;
+        delta = Arrays.copyOf(delta, rows * k);
+        Arrays.fill(delta, old, delta.length, UNKNOWN);
+    }
+
+    /**
+     * Empties the cache, keeping the room made so far
+     */
+    private void flush()
+    {
+        table.clear();
+        Arrays.fill(subsets, 0, size, null);
+        Arrays.fill(delta, UNKNOWN);
+        size = 0;
+        start = UNKNOWN;
+        flushes++;
+    }
+
+    /**
+     * @return the number of transitions found in the cache
+     */
+    public long getCacheHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the number of transitions that had to be computed
+     */
+    public long getCacheMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return the number of times the cache was full and flushed
+     */
+    public long getCacheFlushes()
+    {
+        return flushes;
+    }
+
+    /**
+     * @return the number of subset states currently cached
+     */
+    public int getCachedStates()
+    {
+        return size;
+    }
+
+    /**
+     * @return the most subset states the cache holds
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+}
@@ -1,9 +1,14 @@
 package fa.nfa;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import fa.CharClass;
+import fa.FAStats;
 import fa.State;
 import fa.dfa.DFA;
-import fa.dfa.DFAState;
+import fa.dfa.OffHeapDFA;
 /**
  * @author Sam Jackson and Jeremy Bouchard
  * Models a Non-Determinant Finite Autonoma
@@ -11,10 +16,19 @@ import fa.dfa.DFAState;
 public class NFA implements NFAInterface
 {
     private LinkedHashSet<NFAState> Q;
+    private HashMap<String, NFAState> byName;
+    private NFAState start;
     private HashSet<Character> alphabet;
-    private ArrayList<NFAState> visit;
-    private LinkedHashSet<String> originalTransitions;
+    private LinkedHashSet<CharClass> classes;
     private Set<String> listFinalStates = new HashSet<String>();
+    private NFAIndex index;
+    private NFASimulator simulator;
+    private boolean frozen;
+    private boolean incremental;
+    /** the last construction and the states given transitions since */
+    private SubsetConstruction lastRun;
+    private Set<NFAState> symDirty = new HashSet<NFAState>();
+    private Set<NFAState> epsDirty = new HashSet<NFAState>();
 
     /**
      * Manages elements of an NFA
@@ -22,114 +36,156 @@ public class NFA implements NFAInterface
     public NFA()
     {
         Q = new LinkedHashSet<NFAState>();
+        byName = new HashMap<String, NFAState>();
         alphabet = new HashSet<Character>();
-        visit = new ArrayList<NFAState>();
-        originalTransitions = new LinkedHashSet<String>();
+        classes = new LinkedHashSet<CharClass>();
     }
     
     /**
      * @param name the name of the state
-     * adds the given state as the start state
+     * adds the given state as the start state,
+     * or marks the existing state with that name
      */
     @Override
     public void addStartState(String name) 
     {
-        NFAState newStartState = new NFAState(name);
-        newStartState.setStartState(true);
-
-        @SuppressWarnings("unchecked")
-        Set<NFAState> finalStates = (Set<NFAState>) getFinalStates();
-        boolean finalAndStart = false;
-        
-        for(NFAState fState : finalStates)
+        changed();
+        NFAState startState = byName.get(name);
+        if(startState == null)
         {
-            if (fState.getName().equals(name))
-            {
-                finalAndStart = true;
-                fState.setStartState(true);
-            }
-        }
-
-        if(!(Q.add(newStartState)))
-        {
-            if(!finalAndStart)
-            {
-                Iterator<NFAState> it = Q.iterator();
-                while(it.hasNext())
-                {
-                    newStartState = it.next();
-                    if(newStartState.getName().equals(name))
-                    {
-                        newStartState.setStartState(true);
-                    }
-                }
-            }
+            startState = new NFAState(name);
+            addState(startState);
         }
+        startState.setStartState(true);
+        start = startState;
     }
 
     /**
      * @param the name of the state being added
-     * Adds an NFA state with the given name.
+     * Adds an NFA state with the given name,
+     * unless a state with that name exists.
      */
     @Override
     public void addState(String name) 
     {
-        NFAState newState = new NFAState(name);
-        Q.add(newState);
+        changed();
+        if(!byName.containsKey(name))
+        {
+            addState(new NFAState(name));
+        }
     }
 
     /**
      * @param the name of the final state being added
      * Adds a new NFA state with the given name,
-     * makes it a final state.
+     * makes it a final state. An existing state
+     * with that name becomes final.
      */
     @Override
     public void addFinalState(String name) 
     {
-        NFAState newFinalState = new NFAState(name);
-        newFinalState.setFinalState(true);
-        Q.add(newFinalState);
+        changed();
+        NFAState finalState = byName.get(name);
+        if(finalState == null)
+        {
+            finalState = new NFAState(name);
+            addState(finalState);
+        }
+        finalState.setFinalState(true);
         listFinalStates.add(name);
     }
 
+    /**
+     * Adds a state object, its name must not be taken
+     * @param s the state to add
+     */
+    void addState(NFAState s)
+    {
+        changed();
+        Q.add(s);
+        byName.put(s.getName(), s);
+        if(s.isFinalState())
+        {
+            listFinalStates.add(s.getName());
+        }
+        if(s.isStartState())
+        {
+            start = s;
+        }
+    }
+
     /**
      * @param the initial state, the destination state,
      * and the symbol used to get there.
      * Creates a transition with the given info.
+     * Transitions between unknown states are ignored.
      */
     @Override
     public void addTransition(String fromState, char onSymb, String toState) 
     {
+        NFAState from = byName.get(fromState);
+        NFAState to = byName.get(toState);
+        if(from != null && to != null)
+        {
+            addTransition(from, onSymb, to);
+        }
+    }
+
+    /**
+     * Adds a transition between two states of this NFA
+     * @param from the source state
+     * @param onSymb the symbol, 'e' for the empty string
+     * @param to the sink state
+     */
+    void addTransition(NFAState from, char onSymb, NFAState to)
+    {
+        changed();
         if(onSymb != 'e') //checks to see if symbol is the empty symbol
         {
             alphabet.add(onSymb);
         }
-
-        originalTransitions.add(fromState + onSymb + toState);
-        Iterator<NFAState> it = Q.iterator();
-
-        while(it.hasNext())
+        if(lastRun != null)
         {
-            NFAState tempState = it.next();
-            
-            if(tempState.getName().equals(fromState))
-            {
-                NFAState tempState2 = null;
-                
-                for(NFAState temp2 : Q)
-                {
+            (onSymb == 'e' ? epsDirty : symDirty).add(from);
+        }
+        from.addTransition(onSymb, to);
+    }
 
-                    if(temp2.getName().equals(toState))
-                    {
-                        tempState2 = temp2;
-                        break;
-                    }
-                }
+    /**
+     * Adds a transition on every char of a class. Determinization
+     * and matching work on the coarsest partition of the alphabet
+     * into classes of chars that no transition tells apart, so a
+     * wide class costs no more than a single char.
+     * Transitions between unknown states are ignored.
+     * @param fromState the source state name
+     * @param onClass the chars, never the empty string
+     * @param toState the sink state name
+     */
+    public void addTransition(String fromState, CharClass onClass, String toState)
+    {
+        NFAState from = byName.get(fromState);
+        NFAState to = byName.get(toState);
+        if(from != null && to != null)
+        {
+            addTransition(from, onClass, to);
+        }
+    }
 
-                tempState.addTransition(onSymb, tempState2);
-                break;
-            }
+    /**
+     * Adds a class transition between two states of this NFA
+     * @param from the source state
+     * @param onClass the chars
+     * @param to the sink state
+     */
+    void addTransition(NFAState from, CharClass onClass, NFAState to)
+    {
+        changed();
+        classes.add(onClass);
+        if(lastRun != null)
+        {
+            symDirty.add(from);
         }
+        from.addTransition(onClass, to);
     }
 
     /**
@@ -176,234 +232,380 @@ public class NFA implements NFAInterface
     @Override
     public State getStartState() 
     {
-        NFAState startState = null;
-        Iterator<NFAState> it = Q.iterator();
+        return start;
+    }
 
-        while(it.hasNext())
+    /**
+     * @return the alphabet of the NFA, every char of
+     * the class transitions included
+     */
+    @Override
+    public Set<Character> getABC() 
+    {
+        if(classes.isEmpty())
         {
-            NFAState tempState = it.next();
-            if(tempState.isStartState() == true)
+            return this.alphabet;
+        }
+        Set<Character> ret = new HashSet<>(alphabet);
+        for(CharClass cls : classes)
+        {
+            for(int i = 0; i < cls.rangeCount(); i++)
             {
-                startState = tempState;
+                for(int c = cls.rangeStart(i); c <= cls.rangeEnd(i); c++)
+                {
+                    ret.add((char) c);
+                }
             }
         }
-        return startState;
+        return ret;
     }
 
     /**
-     * @return the alphabet of the NFA
+     * @return the DFA according to the NFA
+     * Runs the subset construction over an integer
+     * indexed copy of the NFA
      */
     @Override
-    public Set<Character> getABC() 
+    public DFA getDFA() 
     {
-        return this.alphabet;
+        return getDFA(false);
     }
 
     /**
+     * @param minimize if true, equivalent subsets are merged
+     * with Hopcroft's algorithm before the DFA is built
      * @return the DFA according to the NFA
-     * Uses the eClosure of the NFA to return
-     * a DFA
      */
-    @Override
-    public DFA getDFA() 
+    public DFA getDFA(boolean minimize)
     {
-        Queue <Set<NFAState>> states = new LinkedList<Set<NFAState>>();
-        Set<NFAState> start = eClosure((NFAState)getStartState());
-        visit.clear(); //We haven't visited any states yet
-        boolean fs;
-        states.add(start);
-        DFA dfa = new DFA();
-
-        //Main loop, processes each state
-        while(!states.isEmpty()){
-            Set<NFAState> s = states.remove();
-            fs = false;
-            //Checking to see if the state is a final state
-            for(NFAState ecs: start){
-                if(ecs.isFinalState())
-                    fs = true;
-                else {
-                    for(String fstring : listFinalStates){
-                        if(ecs.getName().contains(fstring)){
-                            fs = true;
-                            break;
-                        }
-                    }
-                    if(fs){
-                        break;
-                    }
-                }
-            }
+        SubsetConstruction run = construction();
+        return kept(run, run.run(minimize));
+    }
 
-            //If start state
-            if(dfa.getStartState() == null){
-                //Building state strings
-                StringBuilder str = new StringBuilder();
-                str.append('[');
-                int i = 0;
-                int size = s.size(); 
-                for(NFAState a : s){
-                    str.append(a.getName());
-                    if(i!=size-1){
-                        str.append(", "); //there are more
-                        i++;
-                    }
-                }
-                str.append("]");
-                dfa.addStartState(str.toString());
-                if(fs){ //If also a final state, add it
-                    dfa.addFinalState(str.toString());
-                }
-            }
-            //looking through the alphabet
-            for(char c : alphabet){
-                Set<NFAState> transitionStates = new HashSet<NFAState>();
-
-                for( NFAState st : s){
-                    Set<NFAState> toStateList = st.getToState(c);
-                    if(toStateList != null){
-                        for(NFAState toState: toStateList){
-                            visit.clear();
-                            //using the eClosure of the NFA
-                            Set<NFAState> closureStates = eClosure(toState);
-                            transitionStates.addAll(closureStates); 
-                        }
-                    }
-                }
-                //Building state strings
-                StringBuilder str0 = new StringBuilder();
-                str0.append('[');
-                int i = 0;
-                int size = s.size();
-                for(NFAState a: s){
-                    str0.append(a.getName());
-                    if(i!=size-1){
-                        str0.append(", ");
-                        i++;
-                    }
-                }
-                str0.append("]");
-                //empty state
-                if(transitionStates.toString().equals("[]")){
-                    if(dfaStateExists(transitionStates, dfa)){
-                        dfa.addTransition(str0.toString(), c, transitionStates.toString());
-                    }
-                    else {
-                        dfa.addState("[]");
-                        dfa.addTransition(str0.toString(), c, "[]");
-                        states.add(transitionStates);
-                    }
-                }
-                else if(!dfaStateExists(transitionStates, dfa)){
-                    boolean finalStateChar = false;
-                    states.add(transitionStates);
-                    for(NFAState nfaState : transitionStates){
-                        for(String finalString : listFinalStates){
-                            if(nfaState.getName().contains(finalString)){
-                                finalStateChar = true;
-                                break;
-                            }
-                        }
-
-                        if(finalStateChar){
-                            break;
-                        }
-                    }
+    /**
+     * Determinizes on several threads, expanding each level of the
+     * search in parallel. The result is the same DFA getDFA(minimize)
+     * builds, with the states in the same order.
+     * @param minimize if true, equivalent subsets are merged
+     * @param pool the pool that computes successor subsets
+     * @return the DFA according to the NFA
+     */
+    public DFA getDFA(boolean minimize, ForkJoinPool pool)
+    {
+        SubsetConstruction run = construction();
+        return kept(run, run.run(minimize, pool));
+    }
 
-                    if(finalStateChar){
-                        dfa.addFinalState(transitionStates.toString());
-                    }
-                    else{
-                        dfa.addState(transitionStates.toString());
-                    }
-                }
-                dfa.addTransition(str0.toString(), c, transitionStates.toString());
-            }
+    /**
+     * Determinizes straight into off-heap memory: each transition is
+     * written to the off-heap transition table of the result as soon
+     * as it is found, and the final states to its off-heap final table.
+     * The subsets and the table that deduplicates them stay on the heap
+     * until the construction ends; getOffHeapDFA(long, Path) bounds them.
+     * The DFA states are numbered in the order getDFA lists them, and
+     * transitions into subsets that cannot reach a final state, such
+     * as [], go to DEAD, so a matcher stops on the first such char.
+     * @return the DFA according to the NFA, without state names
+     */
+    public OffHeapDFA getOffHeapDFA()
+    {
+        return new SubsetConstruction(index()).runOffHeap();
+    }
+
+    /**
+     * Determinizes into off-heap memory like getOffHeapDFA, holding at
+     * most about memoryCeiling bytes of subsets on the heap. Past the
+     * ceiling, the subsets found so far are written to files in
+     * spillDir: one in discovery order, which the search reads as its
+     * queue, and sorted runs it binary searches to deduplicate. The
+     * runs are merged when there are too many, and every file is
+     * deleted before this returns. Lookups that reach the disk are
+     * slower, so the ceiling is best set as high as the heap allows.
+     * @param memoryCeiling roughly the most heap bytes the subsets may use
+     * @param spillDir an existing directory for the spill files
+     * @return the DFA according to the NFA, without state names
+     * @throws IOException if the spill files cannot be written or read
+     */
+    public OffHeapDFA getOffHeapDFA(long memoryCeiling, Path spillDir) throws IOException
+    {
+        return new SubsetConstruction(index()).runSpilling(memoryCeiling, spillDir);
+    }
+
+    /**
+     * Turns the incremental mode on or off. While it is on, getDFA
+     * keeps the subsets and transitions it found, and the NFA records
+     * which states are given transitions. The next getDFA then only
+     * computes the successors of the subsets holding such a state, and
+     * of those leading into an epsilon closure that grew, and takes the
+     * rest from the previous run (see SubsetReuse). The DFA is the same
+     * as without the mode, at the cost of keeping one subset table in
+     * memory between calls.
+     * @param on true to reuse the previous determinization
+     */
+    public void setIncremental(boolean on)
+    {
+        incremental = on;
+        lastRun = null;
+        symDirty.clear();
+        epsDirty.clear();
+    }
+
+    /**
+     * @return true if getDFA reuses the previous determinization
+     */
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    /**
+     * @return a subset construction of the current NFA, reusing
+     * the previous one in incremental mode
+     */
+    private SubsetConstruction construction()
+    {
+        if(lastRun == null)
+        {
+            return new SubsetConstruction(index());
+        }
+        NFAIndex idx = index();
+        SubsetReuse reuse = lastRun.reuse(idx, symDirty, epsDirty);
+        //a run that fails leaves nothing to reuse
+        lastRun = null;
+        symDirty.clear();
+        epsDirty.clear();
+        return new SubsetConstruction(idx, reuse);
+    }
+
+    /**
+     * @param run a finished construction
+     * @param dfa the DFA it built
+     * @return dfa, after keeping run for the next one in incremental mode
+     */
+    private DFA kept(SubsetConstruction run, DFA dfa)
+    {
+        if(incremental)
+        {
+            lastRun = run;
         }
         return dfa;
     }
 
     /**
-     * @param from state and symbol
-     * @return the state that results from
-     * the beginning state plus the symbol
+     * @param input the input string, "e" stands for the empty string
+     * @return true if the NFA accepts input
+     * Simulates the NFA over the set of active states
+     * without building a DFA
      */
-    @Override
-    public Set<NFAState> getToState(NFAState from, char onSymb) 
+    public boolean accepts(CharSequence input)
     {
-        return from.getToState(onSymb);
+        if(FAStats.isOn())
+        {
+            FAStats.matched(input.length());
+        }
+        NFASimulator sim = simulator;
+        if(sim == null)
+        {
+            sim = new NFASimulator(index());
+            simulator = sim;
+        }
+        return sim.accepts("e".contentEquals(input) ? "" : input);
     }
 
     /**
-     * @param an NFA state
-     * @return the eClosure
-     * Uses recursion to find the eClosure
+     * @param memoryBudget roughly the most bytes its state cache may use
+     * @return a DFA that determinizes this NFA on demand while matching
+     * Later changes to this NFA are not seen by the returned DFA
      */
-    @Override
-    public Set<NFAState> eClosure(NFAState s) 
+    public LazyDFA getLazyDFA(long memoryBudget)
     {
-        Set<NFAState> returnVal = new LinkedHashSet<>();
-        returnVal.add(s);
-        Set<NFAState> toStates = s.getEStates();
-        addVisitState(s);
+        return new LazyDFA(index(), memoryBudget);
+    }
+
+    /**
+     * @return a searcher that finds the substrings of a text
+     * in the language of this NFA
+     * Later changes to this NFA are not seen by the searcher
+     */
+    public Searcher searcher()
+    {
+        return new Searcher(index());
+    }
+
+    /**
+     * Builds a smaller NFA with the same language to determinize
+     * instead of this one: epsilon transitions are removed, states
+     * that lead nowhere or cannot be reached are dropped and
+     * bisimilar states are merged (see Reducer). Each state of the
+     * result keeps the name of one of the states it stands for.
+     * This NFA does not change.
+     * @return the reduced NFA, without epsilon transitions
+     */
+    public NFA reduce()
+    {
+        return Reducer.reduce(index());
+    }
+
+    /**
+     * Checks that the NFA accepts every string over its alphabet,
+     * getABC(), without building the DFA (see Antichains)
+     * @return true if no string over the alphabet is rejected
+     */
+    public boolean isUniversal()
+    {
+        return universalityWitness() == null;
+    }
+
+    /**
+     * Symbols are spelled with chars other than 'e' where they can be,
+     * but a class of just 'e' can still give the one char string "e",
+     * which accepts reads as the empty string: check it with
+     * getDFA().compile().matcher(), which reads 'e' as a char.
+     * @return a string over the alphabet that the NFA rejects,
+     * "" for the empty string, or null if the NFA is universal
+     */
+    public String universalityWitness()
+    {
+        return Antichains.universality(index());
+    }
+
+    /**
+     * Checks that every string this NFA accepts is accepted by other,
+     * without building either DFA (see Antichains)
+     * @param other another NFA
+     * @return true if the language of this NFA is a subset of the other's
+     */
+    public boolean isSubsetOf(NFA other)
+    {
+        return inclusionWitness(other) == null;
+    }
+
+    /**
+     * The string is spelled as in universalityWitness.
+     * @param other another NFA
+     * @return a string this NFA accepts and other rejects,
+     * "" for the empty string, or null if there is none
+     */
+    public String inclusionWitness(NFA other)
+    {
+        return Antichains.inclusion(index(), other.index());
+    }
 
-        if(toStates.isEmpty())
+    /**
+     * Takes an immutable view of the NFA that threads can share
+     * without locking, for determinizing, matching and searching.
+     * Later changes to this NFA are not seen by it, and it must be
+     * taken while no thread changes this NFA.
+     * @return the snapshot
+     */
+    public NFASnapshot snapshot()
+    {
+        return new NFASnapshot(index());
+    }
+
+    /**
+     * Packs the transitions of every state into compressed sparse
+     * rows of int ids and drops the per state transition maps,
+     * which hold several objects per edge. getToState, eClosure,
+     * getDFA, accepts and everything else that reads the NFA keep
+     * working over the packed rows. The NFA can no longer change:
+     * adding states or transitions throws IllegalStateException.
+     */
+    public void freeze()
+    {
+        if(frozen)
         {
-            return returnVal;
+            return;
         }
-
-        else
+        NFAIndex idx = index();
+        for(NFAState s : Q)
         {
-            for(NFAState state : toStates)
-            {
-                if(!checkVisitState(state))
-                {
-                    returnVal.addAll(eClosure(state)); //Recursion!
-                }
-            }
-            visit.clear();
-            return returnVal;
+            s.freeze(idx, idx.idOf(s));
         }
+        frozen = true;
     }
-    
+
+    /**
+     * @return true if freeze has been called
+     */
+    public boolean isFrozen()
+    {
+        return frozen;
+    }
+
     /**
-     * @param an NFA state s
-     * @return whether the state has been vistited
+     * @return an integer indexed view of the current states,
+     * rebuilt only after the NFA has changed
      */
-    public boolean checkVisitState(NFAState s)
+    NFAIndex index()
     {
-        return visit.contains(s);
+        NFAIndex ret = index;
+        if(ret == null)
+        {
+            ret = new NFAIndex(Q, (NFAState)getStartState(), alphabet, classes, listFinalStates);
+            index = ret;
+        }
+        return ret;
     }
 
     /**
-     * @param NFA state s
-     * Adds a state to the list of visited
-     * states.
+     * Drops everything derived from the states and transitions
      */
-    private void addVisitState(NFAState s)
+    private void changed()
     {
-        visit.add(s);
+        if(frozen)
+        {
+            throw new IllegalStateException("The NFA is frozen");
+        }
+        index = null;
+        simulator = null;
     }
 
     /**
-     * @param checkingStates
-     * @param dfa
-     * @return true if the dfa state does exist
+     * @param from state and symbol
+     * @return the state that results from
+     * the beginning state plus the symbol
      */
-    private boolean dfaStateExists(Set<NFAState> checkingStates, DFA dfa)
+    @Override
+    public Set<NFAState> getToState(NFAState from, char onSymb) 
     {
-        boolean returnVal = false;
-        Set<DFAState> dfaStates = dfa.getStates();
+        return from.getToState(onSymb);
+    }
 
-        for(DFAState dfaState : dfaStates)
+    /**
+     * @param an NFA state
+     * @return the eClosure
+     * Reads the closure from the table computed once per
+     * change of the NFA
+     */
+    @Override
+    public Set<NFAState> eClosure(NFAState s) 
+    {
+        Set<NFAState> returnVal = new LinkedHashSet<>();
+        NFAIndex idx = index();
+        int id = idx.idOf(s);
+        if(id < 0)
         {
-            if(dfaState.getName().equals(checkingStates.toString()))
+            //not one of our states, follow its epsilon transitions
+            Deque<NFAState> stack = new ArrayDeque<>();
+            stack.push(s);
+            returnVal.add(s);
+            while(!stack.isEmpty())
             {
-                returnVal = true;
-                return returnVal;
+                for(NFAState t : stack.pop().getEStates())
+                {
+                    if(returnVal.add(t))
+                    {
+                        stack.push(t);
+                    }
+                }
             }
+            return returnVal;
+        }
+        for(int t : idx.closure(id))
+        {
+            returnVal.add(idx.states[t]);
         }
-        
         return returnVal;
     }
 }
\ No newline at end of file
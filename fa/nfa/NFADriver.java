@@ -1,67 +1,58 @@
 package fa.nfa;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Scanner;
 import java.util.StringTokenizer;
 
+import fa.dfa.CompiledDFA;
 import fa.dfa.DFA;
 
 /**
  * Sept 1, 2016
  * The class reads the input file and instantiates a DFA from it.
- * Next it reads a string from the same file and prints "yes" if the string 
+ * Next it reads a string from the same file and prints "yes" if the string
  * is in the DFA's language or "not if the string is not in the DFA's language.
+ * With --batch first, the strings are read and checked in large chunks
+ * and the answers are buffered, for files with millions of strings.
  * @author elenasherman
  *
  */
 public class NFADriver {
 
+	/** strings checked together in batch mode */
+	private static final int CHUNK = 1 << 16;
+	/** chars buffered for input and output in batch mode */
+	private static final int BUFFER = 1 << 20;
+
 	/**
-	 * @param args - a file name containing a DFA encoding and a set of strings.
-	 * @throws FileNotFoundException 
+	 * @param args - optionally --batch, then a file name containing a DFA encoding and a set of strings.
+	 * @throws IOException
 	 */
-	public static void main(String[] args) throws FileNotFoundException {
+	public static void main(String[] args) throws IOException {
+		boolean batch = args.length > 1 && args[0].equals("--batch");
 		//The file name is passed as an argument
-		String fileName = args[0];
+		String fileName = args[batch ? 1 : 0];
 		File file = new File(fileName);
 		if(file.exists()){
+			if(batch){
+				runBatch(file);
+				return;
+			}
 			//create a DFA instance -- you need to write DFA.java that
 			//implements DFAInterface.java
-			NFA nfa = new NFA();
 			Scanner scan = new Scanner(file);
-			//the first line is the set of final states
-			//get the string of the final states and split it on a space
-			String finalStates = scan.nextLine().trim();
-			//using tokenizer to split the string
-			StringTokenizer tk = new StringTokenizer(finalStates, " ");
-			while(tk.hasMoreTokens()){
-				nfa.addFinalState(tk.nextToken());
-			}
-			
-			//the second line is the start state
-			String startStateName = scan.nextLine().trim();
-			nfa.addStartState(startStateName);
-
-			//get the string of other states and split in on space too
-			String otherStates = scan.nextLine().trim();
-			tk = new StringTokenizer(otherStates, " ");
-			while(tk.hasMoreTokens()){
-				nfa.addState(tk.nextToken());
-			}
-
-			//read in the transactions
-			String trans = scan.nextLine();
-			tk = new StringTokenizer(trans, " ");
-			while(tk.hasMoreTokens()){
-				char[] tran = tk.nextToken().toCharArray();
-				nfa.addTransition(String.valueOf(tran[0]), tran[1], String.valueOf(tran[2]));
-			}
+			NFA nfa = readNFA(scan.nextLine(), scan.nextLine(), scan.nextLine(), scan.nextLine());
 			DFA dfa = nfa.getDFA();
 			//print out dfa in the specified format.
 			System.out.println(dfa);
-			//now call the method again and process the strings
-			dfa = nfa.getDFA();
+			//now process the strings with the same DFA
 			while(scan.hasNext()){
 				boolean accepts = dfa.accepts(scan.nextLine());
 				System.out.println(accepts?"yes":"no");
@@ -72,4 +63,107 @@ public class NFADriver {
 		}
 	}
 
+	/**
+	 * Builds the NFA from the four lines that start an input file
+	 * @param finalStates the names of the final states
+	 * @param startStateName the name of the start state
+	 * @param otherStates the names of the other states
+	 * @param trans the transitions, e.g. "a0b b1a"
+	 * @return the NFA
+	 */
+	private static NFA readNFA(String finalStates, String startStateName, String otherStates, String trans){
+		NFA nfa = new NFA();
+		//the first line is the set of final states
+		//using tokenizer to split the string
+		StringTokenizer tk = new StringTokenizer(finalStates.trim(), " ");
+		while(tk.hasMoreTokens()){
+			nfa.addFinalState(tk.nextToken());
+		}
+
+		//the second line is the start state
+		nfa.addStartState(startStateName.trim());
+
+		//get the string of other states and split in on space too
+		tk = new StringTokenizer(otherStates.trim(), " ");
+		while(tk.hasMoreTokens()){
+			nfa.addState(tk.nextToken());
+		}
+
+		//read in the transactions
+		tk = new StringTokenizer(trans, " ");
+		while(tk.hasMoreTokens()){
+			char[] tran = tk.nextToken().toCharArray();
+			nfa.addTransition(String.valueOf(tran[0]), tran[1], String.valueOf(tran[2]));
+		}
+		return nfa;
+	}
+
+	/**
+	 * Prints the same output as the default mode. The NFA is
+	 * determinized once and the DFA compiled to a table; strings
+	 * are read in chunks that are checked in parallel, and the
+	 * answers are written in input order through one large buffer.
+	 * @param file the input file
+	 * @throws IOException if reading the file fails
+	 */
+	private static void runBatch(File file) throws IOException {
+		try(BufferedReader in = new BufferedReader(new FileReader(file), BUFFER)){
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFER);
+			NFA nfa = readNFA(line(in), line(in), line(in), line(in));
+			DFA dfa = nfa.getDFA();
+			dfa.writeTo(out);
+			out.newLine();
+			CompiledDFA compiled = dfa.compile();
+
+			ArrayList<String> chunk = new ArrayList<String>(CHUNK);
+			//blank lines count only if a string follows them, as with Scanner.hasNext
+			ArrayList<String> blanks = new ArrayList<String>();
+			String s;
+			while((s = in.readLine()) != null){
+				if(s.isBlank()){
+					blanks.add(s);
+					continue;
+				}
+				chunk.addAll(blanks);
+				blanks.clear();
+				//"e" stands for the empty string
+				chunk.add(s.equals("e") ? "" : s);
+				if(chunk.size() >= CHUNK){
+					answer(compiled, chunk, out);
+				}
+			}
+			answer(compiled, chunk, out);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Checks a chunk of strings in parallel, writes the answers in
+	 * order and empties the chunk
+	 * @param dfa the compiled DFA
+	 * @param chunk the strings
+	 * @param out where the answers go
+	 * @throws IOException if writing fails
+	 */
+	private static void answer(CompiledDFA dfa, ArrayList<String> chunk, BufferedWriter out) throws IOException {
+		BitSet accepted = dfa.acceptsAll(chunk);
+		for(int i = 0; i < chunk.size(); i++){
+			out.write(accepted.get(i) ? "yes" : "no");
+			out.newLine();
+		}
+		chunk.clear();
+	}
+
+	/**
+	 * @param in the input file
+	 * @return the next line
+	 * @throws IOException if the file ends early or reading fails
+	 */
+	private static String line(BufferedReader in) throws IOException {
+		String s = in.readLine();
+		if(s == null){
+			throw new IOException("The file ends before the NFA is complete");
+		}
+		return s;
+	}
 }
@@ -0,0 +1,354 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import fa.CharClass;
+import fa.FAStats;
+
+/**
+ * A read-only, integer indexed view of an NFA.
+ * States get dense ids ordered by name so that subsets
+ * print in a stable order, and symbols get dense ids in
+ * the order the NFA's alphabet iterates, followed by the merged
+ * classes of the class transitions (see AlphabetPartition).
+ * Transitions are stored in compressed sparse rows: the targets
+ * of state s on symbol c are targets[offsets[s * k + c]] up to
+ * targets[offsets[s * k + c + 1]], sorted by id, and epsilon
+ * transitions have rows of their own in epsOffsets and epsTargets.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class NFAIndex
+{
+    final NFAState[] states;
+    final char[] symbols;
+    final CharClass[] labels;
+    final int start;
+    final int words;
+    final int[] offsets;
+    final int[] targets;
+    final int[] epsOffsets;
+    final int[] epsTargets;
+    private final IdentityHashMap<NFAState, Integer> ids;
+    private final int[] symbolOf;
+    private final ClosureTable closures;
+    private final StateSet finals;
+
+    /**
+     * Indexes the given states
+     * @param q the states of the NFA
+     * @param startState the start state, may be null
+     * @param alphabet the chars of single char transitions, without 'e'
+     * @param classes the labels of class transitions
+     * @param finalNames names of the final states
+     */
+    NFAIndex(Collection<NFAState> q, NFAState startState, Set<Character> alphabet, Collection<CharClass> classes, Set<String> finalNames)
+    {
+        IndexEvent event = FAStats.isTracing() ? new IndexEvent() : null;
+        if(event != null)
+        {
+            event.begin();
+        }
+        states = q.toArray(new NFAState[0]);
+        Arrays.sort(states, Comparator.comparing(NFAState::getName));
+        words = StateSet.wordsFor(states.length);
+        ids = new IdentityHashMap<>();
+        for(int i = 0; i < states.length; i++)
+        {
+            ids.put(states[i], i);
+        }
+        start = startState == null ? -1 : ids.get(startState);
+
+        AlphabetPartition partition = new AlphabetPartition(alphabet, classes);
+        symbols = partition.symbols;
+        labels = partition.labels;
+        symbolOf = partition.classOf;
+
+        offsets = new int[states.length * symbols.length + 1];
+        epsOffsets = new int[states.length + 1];
+        int[] out = new int[Math.max(16, states.length)];
+        int[] epsOut = new int[16];
+        int m = 0;
+        int e = 0;
+        long[] fin = new long[words];
+        for(int s = 0; s < states.length; s++)
+        {
+            NFAState state = states[s];
+            for(int c = 0; c < symbols.length; c++)
+            {
+                //a class holding 'e' is a real char, never the empty string
+                Set<NFAState> to = symbols[c] == 'e' ? state.getClassTargets('e') : state.getToState(symbols[c]);
+                offsets[s * symbols.length + c] = m;
+                out = idsOf(to, out, m);
+                m += size(to);
+            }
+            Set<NFAState> eps = state.getEStates();
+            epsOffsets[s] = e;
+            epsOut = idsOf(eps, epsOut, e);
+            e += size(eps);
+            if(state.isFinalState() || finalNames.contains(state.getName()))
+            {
+                fin[s >>> 6] |= 1L << s;
+            }
+        }
+        offsets[states.length * symbols.length] = m;
+        epsOffsets[states.length] = e;
+        targets = Arrays.copyOf(out, m);
+        epsTargets = Arrays.copyOf(epsOut, e);
+        finals = new StateSet(fin);
+        closures = new ClosureTable(epsOffsets, epsTargets, words);
+        if(event != null && event.shouldCommit())
+        {
+            event.states = states.length;
+            event.symbols = symbols.length;
+            event.closures = states.length;
+            event.commit();
+        }
+        if(FAStats.isOn())
+        {
+            FAStats.closures(states.length);
+        }
+    }
+
+    /**
+     * Appends the ids of a set to a row under construction
+     * @param set states reachable in one step, may be null
+     * @param out the targets so far, grown if needed
+     * @param at where the row starts
+     * @return out, holding the ids in ascending order from at
+     */
+    private int[] idsOf(Set<NFAState> set, int[] out, int at)
+    {
+        int n = size(set);
+        if(at + n > out.length)
+        {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, at + n));
+        }
+        if(n > 0)
+        {
+            int i = at;
+            for(NFAState t : set)
+            {
+                out[i++] = ids.get(t);
+            }
+            Arrays.sort(out, at, at + n);
+        }
+        return out;
+    }
+
+    /**
+     * @param set a set of states, may be null
+     * @return its size
+     */
+    private static int size(Set<NFAState> set)
+    {
+        return set == null ? 0 : set.size();
+    }
+
+    /**
+     * @param state a state of the indexed NFA
+     * @return its id, or -1 if the state is not indexed
+     */
+    int idOf(NFAState state)
+    {
+        Integer id = ids.get(state);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * A view of one row, as NFAState.getToState returns it
+     * once the NFA is frozen
+     * @param s a state id
+     * @param symb the symbol, 'e' for the empty string
+     * @return the states s moves to on symb, null if there are none
+     */
+    Set<NFAState> targetSet(int s, char symb)
+    {
+        if(symb == 'e')
+        {
+            int from = epsOffsets[s];
+            int to = epsOffsets[s + 1];
+            return from == to ? null : new TargetSet(this, epsTargets, from, to);
+        }
+        int c = symbolOf(symb);
+        if(c < 0)
+        {
+            return null;
+        }
+        int from = offsets[s * symbols.length + c];
+        int to = offsets[s * symbols.length + c + 1];
+        return from == to ? null : new TargetSet(this, targets, from, to);
+    }
+
+    /**
+     * @param c a character
+     * @return the symbol id of c, or -1 if c is not in the alphabet
+     */
+    int symbolOf(char c)
+    {
+        return c < symbolOf.length ? symbolOf[c] : -1;
+    }
+
+    /**
+     * @param s a state id
+     * @return ids of the epsilon closure of s, including s
+     */
+    int[] closure(int s)
+    {
+        return closures.closure(s);
+    }
+
+    /**
+     * @return the closure of the start state
+     */
+    StateSet startSet()
+    {
+        long[] w = new long[words];
+        if(start >= 0)
+        {
+            for(int t : closures.closure(start))
+            {
+                w[t >>> 6] |= 1L << t;
+            }
+        }
+        return new StateSet(w);
+    }
+
+    /**
+     * Computes the closure of the states the subset moves to on c
+     * @param from the source subset
+     * @param c a symbol id
+     * @param scratch a bitset of words longs, overwritten
+     * @return scratch, holding the successor subset
+     */
+    long[] step(StateSet from, int c, long[] scratch)
+    {
+        Arrays.fill(scratch, 0L);
+        for(int s = from.nextSetBit(0); s >= 0; s = from.nextSetBit(s + 1))
+        {
+            int row = s * symbols.length + c;
+            for(int i = offsets[row], end = offsets[row + 1]; i < end; i++)
+            {
+                int t = targets[i];
+                if((scratch[t >>> 6] & (1L << t)) == 0)
+                {
+                    for(int u : closures.closure(t))
+                    {
+                        scratch[u >>> 6] |= 1L << u;
+                    }
+                }
+            }
+        }
+        return scratch;
+    }
+
+    /**
+     * @param set a subset
+     * @return true if the subset contains a final state
+     */
+    boolean isFinal(StateSet set)
+    {
+        return set.intersects(finals);
+    }
+
+    /**
+     * @param s a state id
+     * @return true if the state is final
+     */
+    boolean isFinal(int s)
+    {
+        return finals.contains(s);
+    }
+
+    /**
+     * @param set a subset as a bitset
+     * @return true if the subset contains a final state
+     */
+    boolean isFinal(long[] set)
+    {
+        return finals.intersects(set);
+    }
+
+    /**
+     * Walks the transitions backwards from the final states. A subset
+     * can reach a final subset exactly when it holds a live state.
+     * @return the states from which a final state can be reached
+     */
+    StateSet live()
+    {
+        int n = states.length;
+        int k = symbols.length;
+        //predecessors grouped by target, in compressed rows
+        int[] predOff = new int[n + 2];
+        for(int t : targets)
+        {
+            predOff[t + 2]++;
+        }
+        for(int t : epsTargets)
+        {
+            predOff[t + 2]++;
+        }
+        for(int s = 0; s < n; s++)
+        {
+            predOff[s + 2] += predOff[s + 1];
+        }
+        int[] pred = new int[targets.length + epsTargets.length];
+        for(int s = 0; s < n; s++)
+        {
+            for(int i = offsets[s * k], end = offsets[(s + 1) * k]; i < end; i++)
+            {
+                pred[predOff[targets[i] + 1]++] = s;
+            }
+            for(int i = epsOffsets[s]; i < epsOffsets[s + 1]; i++)
+            {
+                pred[predOff[epsTargets[i] + 1]++] = s;
+            }
+        }
+        long[] live = new long[words];
+        int[] queue = new int[n];
+        int m = 0;
+        for(int s = finals.nextSetBit(0); s >= 0; s = finals.nextSetBit(s + 1))
+        {
+            live[s >>> 6] |= 1L << s;
+            queue[m++] = s;
+        }
+        for(int i = 0; i < m; i++)
+        {
+            int t = queue[i];
+            for(int j = predOff[t]; j < predOff[t + 1]; j++)
+            {
+                int s = pred[j];
+                if((live[s >>> 6] & (1L << s)) == 0)
+                {
+                    live[s >>> 6] |= 1L << s;
+                    queue[m++] = s;
+                }
+            }
+        }
+        return new StateSet(live);
+    }
+
+    /**
+     * Builds the "[a, b]" label of a subset
+     * @param set a subset
+     * @return the names of its members in id order
+     */
+    String label(StateSet set)
+    {
+        StringBuilder str = new StringBuilder();
+        str.append('[');
+        for(int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1))
+        {
+            if(str.length() > 1)
+            {
+                str.append(", ");
+            }
+            str.append(states[s].getName());
+        }
+        str.append(']');
+        return str.toString();
+    }
+}
@@ -0,0 +1,176 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Decides membership by running the NFA directly over the
+ * set of active states, so no DFA is ever built.
+ * The active set is a long[] bitset. The closure of the successors
+ * of every (state, symbol) pair is precomputed once, as a dense mask
+ * when it holds more ids than a set has words and as an id list
+ * otherwise, so each character costs at most O(active states * words).
+ * Masks and lists together use at most TABLE_BUDGET longs, two list ids
+ * to a long; the pairs that do not fit are computed on the fly from the
+ * transitions and closures of the NFAIndex. Masks and lists are packed
+ * into flat arrays indexed by state * k + symbol, like the transitions
+ * of the NFAIndex.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class NFASimulator
+{
+    /** the most longs spent on successor masks and lists */
+    static final long TABLE_BUDGET = 1L << 22;
+    /** the maskAt of a pair with a list */
+    private static final int LIST = -1;
+    /** the maskAt of a pair computed on the fly */
+    private static final int DIRECT = -2;
+
+    private final NFAIndex index;
+    /** where the mask of each pair starts in masks, or LIST or DIRECT */
+    private final int[] maskAt;
+    private final long[] masks;
+    /** where the list of each pair starts in lists, with an end entry */
+    private final int[] listAt;
+    private final int[] lists;
+    private final StateSet start;
+
+    /**
+     * @param index the NFA to simulate
+     */
+    NFASimulator(NFAIndex index)
+    {
+        this.index = index;
+        this.start = index.startSet();
+        int n = index.states.length;
+        int k = index.symbols.length;
+        int w = index.words;
+        maskAt = new int[n * k];
+        listAt = new int[n * k + 1];
+        long[] maskOut = new long[0];
+        int[] listOut = new int[Math.max(16, n)];
+        int usedMasks = 0;
+        int usedList = 0;
+
+        long[] scratch = new long[w];
+        for(int s = 0; s < n; s++)
+        {
+            for(int c = 0; c < k; c++)
+            {
+                int row = s * k + c;
+                Arrays.fill(scratch, 0L);
+                for(int i = index.offsets[row], end = index.offsets[row + 1]; i < end; i++)
+                {
+                    for(int u : index.closure(index.targets[i]))
+                    {
+                        scratch[u >>> 6] |= 1L << u;
+                    }
+                }
+                StateSet succ = new StateSet(scratch);
+                int size = succ.size();
+                listAt[row] = usedList;
+                long used = usedMasks + (usedList + 1L) / 2;
+                if(size > w && used + w <= TABLE_BUDGET)
+                {
+                    if(usedMasks + w > maskOut.length)
+                    {
+                        maskOut = Arrays.copyOf(maskOut, (int) Math.min(TABLE_BUDGET, Math.max(2L * maskOut.length, usedMasks + w)));
+                    }
+                    System.arraycopy(scratch, 0, maskOut, usedMasks, w);
+                    maskAt[row] = usedMasks;
+                    usedMasks += w;
+                }
+                else if(size <= w && used + (size + 1) / 2 <= TABLE_BUDGET)
+                {
+                    maskAt[row] = LIST;
+                    if(usedList + size > listOut.length)
+                    {
+                        listOut = Arrays.copyOf(listOut, Math.max(2 * listOut.length, usedList + size));
+                    }
+                    for(int u = succ.nextSetBit(0); u >= 0; u = succ.nextSetBit(u + 1))
+                    {
+                        listOut[usedList++] = u;
+                    }
+                }
+                else
+                {
+                    maskAt[row] = DIRECT;
+                }
+            }
+        }
+        listAt[n * k] = usedList;
+        masks = Arrays.copyOf(maskOut, usedMasks);
+        lists = Arrays.copyOf(listOut, usedList);
+    }
+
+    /**
+     * @param input the input string
+     * @return true if some run of the NFA on input ends in a final state
+     */
+    boolean accepts(CharSequence input)
+    {
+        int k = index.symbols.length;
+        int w = index.words;
+        long[] current = new long[w];
+        long[] next = new long[w];
+        start.orInto(current);
+
+        for(int i = 0, len = input.length(); i < len; i++)
+        {
+            int c = index.symbolOf(input.charAt(i));
+            if(c < 0)
+            {
+                return false;
+            }
+            Arrays.fill(next, 0L);
+            boolean any = false;
+            for(int j = 0; j < w; j++)
+            {
+                long word = current[j];
+                while(word != 0)
+                {
+                    int s = (j << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    int row = s * k + c;
+                    int at = maskAt[row];
+                    if(at >= 0)
+                    {
+                        for(int m = 0; m < w; m++)
+                        {
+                            next[m] |= masks[at + m];
+                        }
+                    }
+                    else if(at == LIST)
+                    {
+                        for(int l = listAt[row], end = listAt[row + 1]; l < end; l++)
+                        {
+                            int u = lists[l];
+                            next[u >>> 6] |= 1L << u;
+                        }
+                    }
+                    else
+                    {
+                        for(int t = index.offsets[row], end = index.offsets[row + 1]; t < end; t++)
+                        {
+                            for(int u : index.closure(index.targets[t]))
+                            {
+                                next[u >>> 6] |= 1L << u;
+                            }
+                        }
+                    }
+                }
+            }
+            for(int j = 0; j < w && !any; j++)
+            {
+                any = next[j] != 0;
+            }
+            if(!any)
+            {
+                return false;
+            }
+            long[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        return index.isFinal(current);
+    }
+}
@@ -0,0 +1,155 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import fa.FAStats;
+import fa.dfa.DFA;
+import fa.dfa.OffHeapDFA;
+
+/**
+ * An immutable view of an NFA as it was when NFA.snapshot was called.
+ * It holds only the packed NFAIndex, whose arrays never change, and
+ * every operation keeps its scratch state in locals or in the objects
+ * it returns. Any number of threads, platform or virtual, can
+ * determinize, match and search through one snapshot without locking.
+ * Each getDFA call returns a new DFA that belongs to its caller.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+public final class NFASnapshot
+{
+    private final NFAIndex index;
+    /** built on the first accepts, a race only builds it twice */
+    private volatile NFASimulator simulator;
+
+    /**
+     * @param index the indexed NFA
+     */
+    NFASnapshot(NFAIndex index)
+    {
+        this.index = index;
+    }
+
+    /**
+     * @return a new DFA according to the NFA
+     */
+    public DFA getDFA()
+    {
+        return getDFA(false);
+    }
+
+    /**
+     * @param minimize if true, equivalent subsets are merged
+     * @return a new DFA according to the NFA
+     */
+    public DFA getDFA(boolean minimize)
+    {
+        return new SubsetConstruction(index).run(minimize);
+    }
+
+    /**
+     * @param minimize if true, equivalent subsets are merged
+     * @param pool the pool that computes successor subsets
+     * @return a new DFA according to the NFA
+     */
+    public DFA getDFA(boolean minimize, ForkJoinPool pool)
+    {
+        return new SubsetConstruction(index).run(minimize, pool);
+    }
+
+    /**
+     * @return a new off-heap DFA according to the NFA (see NFA.getOffHeapDFA)
+     */
+    public OffHeapDFA getOffHeapDFA()
+    {
+        return new SubsetConstruction(index).runOffHeap();
+    }
+
+    /**
+     * @param memoryCeiling roughly the most heap bytes the subsets may use
+     * @param spillDir an existing directory for the spill files
+     * @return a new off-heap DFA according to the NFA, built within
+     * the ceiling (see NFA.getOffHeapDFA)
+     * @throws IOException if the spill files cannot be written or read
+     */
+    public OffHeapDFA getOffHeapDFA(long memoryCeiling, Path spillDir) throws IOException
+    {
+        return new SubsetConstruction(index).runSpilling(memoryCeiling, spillDir);
+    }
+
+    /**
+     * @param input the input string, "e" stands for the empty string
+     * @return true if the NFA accepts input
+     */
+    public boolean accepts(CharSequence input)
+    {
+        if(FAStats.isOn())
+        {
+            FAStats.matched(input.length());
+        }
+        NFASimulator sim = simulator;
+        if(sim == null)
+        {
+            sim = new NFASimulator(index);
+            simulator = sim;
+        }
+        return sim.accepts("e".contentEquals(input) ? "" : input);
+    }
+
+    /**
+     * @param memoryBudget roughly the most bytes its state cache may use
+     * @return a new lazily built DFA, for the calling thread only
+     */
+    public LazyDFA getLazyDFA(long memoryBudget)
+    {
+        return new LazyDFA(index, memoryBudget);
+    }
+
+    /**
+     * @return a searcher for the language of the NFA, which
+     * can be shared by threads
+     */
+    public Searcher searcher()
+    {
+        return new Searcher(index);
+    }
+
+    /**
+     * @return a new, reduced NFA with the same language (see NFA.reduce)
+     */
+    public NFA reduce()
+    {
+        return Reducer.reduce(index);
+    }
+
+    /**
+     * The string is spelled as in NFA.universalityWitness, so a lone
+     * "e" is a char, not the empty string.
+     * @return a string over the alphabet that the NFA rejects,
+     * "" for the empty string, or null if the NFA is universal
+     */
+    public String universalityWitness()
+    {
+        return Antichains.universality(index);
+    }
+
+    /**
+     * The string is spelled as in universalityWitness.
+     * @param other another snapshot
+     * @return a string this NFA accepts and other rejects,
+     * "" for the empty string, or null if there is none
+     */
+    public String inclusionWitness(NFASnapshot other)
+    {
+        return Antichains.inclusion(index, other.index);
+    }
+
+    /**
+     * @return the number of states
+     */
+    public int getStateCount()
+    {
+        return index.states.length;
+    }
+}
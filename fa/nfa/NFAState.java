@@ -1,5 +1,6 @@
 package fa.nfa;
 
+import fa.CharClass;
 import fa.State;
 import java.util.*;
 
@@ -13,6 +14,10 @@ public class NFAState extends State
     private boolean isStart, isFinal;
     private NFAState previousState;
     private HashMap<Character, LinkedHashSet<NFAState>> delta;
+    private ArrayList<CharClass> classLabels;
+    private ArrayList<NFAState> classTargets;
+    private NFAIndex frozen;
+    private int id;
     
     /**
      * Creates a non final, non start NFA state
@@ -44,6 +49,7 @@ public class NFAState extends State
      */
     public void setStartState(boolean value)
     {
+        checkNotFrozen();
         isStart = value;
     }
     
@@ -57,6 +63,7 @@ public class NFAState extends State
 
     public void setFinalState(boolean value)
     {
+        checkNotFrozen();
         isFinal = value;
     }
     
@@ -80,9 +87,57 @@ public class NFAState extends State
         return previousState;
     }
     
+    /**
+     * @param symb the symbol, 'e' for the empty string
+     * @return the states this state moves to on symb, including
+     * transitions on classes that hold symb, or null if there are none
+     */
     public Set<NFAState> getToState(char symb)
     {
+        if(frozen != null)
+        {
+            return frozen.targetSet(id, symb);
+        }
         LinkedHashSet<NFAState> ret = delta.get(symb);
+        if(classLabels == null || symb == 'e')
+        {
+            return ret;
+        }
+        Set<NFAState> onClass = getClassTargets(symb);
+        if(onClass == null)
+        {
+            return ret;
+        }
+        if(ret != null)
+        {
+            onClass.addAll(ret);
+        }
+        return onClass;
+    }
+
+    /**
+     * @param c a char
+     * @return the states this state moves to on class transitions
+     * whose class holds c, or null if there are none
+     */
+    Set<NFAState> getClassTargets(char c)
+    {
+        if(classLabels == null)
+        {
+            return null;
+        }
+        LinkedHashSet<NFAState> ret = null;
+        for(int i = 0; i < classLabels.size(); i++)
+        {
+            if(classLabels.get(i).contains(c))
+            {
+                if(ret == null)
+                {
+                    ret = new LinkedHashSet<>();
+                }
+                ret.add(classTargets.get(i));
+            }
+        }
         return ret;
     }
     
@@ -94,6 +149,11 @@ public class NFAState extends State
 
     public Set<NFAState> getEStates()
     {
+        if(frozen != null)
+        {
+            Set<NFAState> eps = frozen.targetSet(id, 'e');
+            return eps == null ? new LinkedHashSet<NFAState>() : eps;
+        }
         Set returnSet = new LinkedHashSet<>();
         
         if(delta.containsKey('e'))
@@ -106,6 +166,7 @@ public class NFAState extends State
 
     public void addTransition(char onSymb, NFAState toState)
     {
+        checkNotFrozen();
         LinkedHashSet<NFAState> newSet = new LinkedHashSet<>();
         
         if(!delta.containsKey(onSymb))
@@ -119,4 +180,52 @@ public class NFAState extends State
             delta.get(onSymb).add(toState);
         }
     }
+
+    /**
+     * Adds a transition on every char of a class
+     * @param onClass the chars
+     * @param toState the sink state
+     */
+    public void addTransition(CharClass onClass, NFAState toState)
+    {
+        checkNotFrozen();
+        if(classLabels == null)
+        {
+            classLabels = new ArrayList<>();
+            classTargets = new ArrayList<>();
+        }
+        classLabels.add(onClass);
+        classTargets.add(toState);
+    }
+
+    /**
+     * Drops the transition map, the transitions are read from
+     * the compressed rows of the index from now on
+     * @param index the frozen NFA's index
+     * @param id the id of this state in the index
+     */
+    void freeze(NFAIndex index, int id)
+    {
+        this.frozen = index;
+        this.id = id;
+        this.delta = null;
+        this.classLabels = null;
+        this.classTargets = null;
+    }
+
+    /**
+     * @return true if the transitions can no longer change
+     */
+    boolean isFrozen()
+    {
+        return frozen != null;
+    }
+
+    private void checkNotFrozen()
+    {
+        if(frozen != null)
+        {
+            throw new IllegalStateException("State " + name + " belongs to a frozen NFA");
+        }
+    }
 }
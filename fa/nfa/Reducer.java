@@ -0,0 +1,509 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Shrinks an NFA without changing its language, so the subset
+ * construction has fewer states to combine. Epsilon transitions are
+ * removed first: a state moves on c wherever a state of its closure
+ * does, and it is final if its closure holds a final state. States that
+ * cannot be reached from the start or cannot reach a final state are
+ * dropped. The remaining states are merged by forward bisimulation,
+ * where a block of states agrees on being final and on the blocks each
+ * symbol leads to, and then by backward bisimulation, where a block
+ * agrees on being the start and on the blocks each symbol comes from.
+ * Both partitions are found by splitting blocks on those signatures,
+ * recomputing only the states whose signatures a split can change.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class Reducer
+{
+    /**
+     * The sorted, distinct (symbol, block) pairs of a state and its
+     * current block, as a hash key
+     */
+    private static final class Signature
+    {
+        private final long[] pairs;
+        private final int hash;
+
+        Signature(long[] pairs)
+        {
+            this.pairs = pairs;
+            this.hash = Arrays.hashCode(pairs);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Signature && hash == ((Signature) o).hash && Arrays.equals(pairs, ((Signature) o).pairs);
+        }
+    }
+
+    private final NFAIndex index;
+    /** the number of states and the start, -1 for none */
+    private int n;
+    private int start;
+    private boolean[] finals;
+    /** the index id whose name each state keeps */
+    private int[] rep;
+    /** the transitions, on symbol ids of the index */
+    private int[] from;
+    private int[] on;
+    private int[] to;
+    private int edges;
+
+    /**
+     * @param index the NFA to reduce
+     */
+    private Reducer(NFAIndex index)
+    {
+        this.index = index;
+    }
+
+    /**
+     * @param index the NFA to reduce
+     * @return a new NFA with the same language, no epsilon
+     * transitions and at most as many states
+     */
+    static NFA reduce(NFAIndex index)
+    {
+        Reducer r = new Reducer(index);
+        r.removeEpsilons();
+        r.trim();
+        r.quotient(r.refine(true));
+        r.quotient(r.refine(false));
+        return r.build();
+    }
+
+    /**
+     * Replaces every state's transitions by those of its closure
+     */
+    private void removeEpsilons()
+    {
+        n = index.states.length;
+        start = index.start;
+        int k = index.symbols.length;
+        finals = new boolean[n];
+        rep = new int[n];
+        from = new int[Math.max(16, index.targets.length)];
+        on = new int[from.length];
+        to = new int[from.length];
+        int[] seen = new int[n];
+        int stamp = 0;
+        for(int s = 0; s < n; s++)
+        {
+            rep[s] = s;
+            int[] closure = index.closure(s);
+            for(int u : closure)
+            {
+                finals[s] |= index.isFinal(u);
+            }
+            for(int c = 0; c < k; c++)
+            {
+                stamp++;
+                for(int u : closure)
+                {
+                    int row = u * k + c;
+                    for(int i = index.offsets[row]; i < index.offsets[row + 1]; i++)
+                    {
+                        int t = index.targets[i];
+                        if(seen[t] != stamp)
+                        {
+                            seen[t] = stamp;
+                            add(s, c, t);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the states that are not both reachable and co-reachable,
+     * except the start state
+     */
+    private void trim()
+    {
+        if(start < 0)
+        {
+            n = 0;
+            edges = 0;
+            return;
+        }
+        boolean[] forward = new boolean[n];
+        boolean[] backward = new boolean[n];
+        int[] stack = new int[n];
+        int[][] out = rows(true);
+        int sp = 0;
+        forward[start] = true;
+        stack[sp++] = start;
+        while(sp > 0)
+        {
+            int s = stack[--sp];
+            for(int i = out[0][s]; i < out[0][s + 1]; i++)
+            {
+                int t = to[out[1][i]];
+                if(!forward[t])
+                {
+                    forward[t] = true;
+                    stack[sp++] = t;
+                }
+            }
+        }
+        int[][] in = rows(false);
+        for(int s = 0; s < n; s++)
+        {
+            if(finals[s] && forward[s])
+            {
+                backward[s] = true;
+                stack[sp++] = s;
+            }
+        }
+        while(sp > 0)
+        {
+            int s = stack[--sp];
+            for(int i = in[0][s]; i < in[0][s + 1]; i++)
+            {
+                int t = from[in[1][i]];
+                if(!backward[t] && forward[t])
+                {
+                    backward[t] = true;
+                    stack[sp++] = t;
+                }
+            }
+        }
+        int[] block = new int[n];
+        int kept = 0;
+        for(int s = 0; s < n; s++)
+        {
+            block[s] = (forward[s] && backward[s]) || s == start ? kept++ : -1;
+        }
+        quotient(block);
+    }
+
+    /**
+     * Refines the states into bisimulation blocks with a worklist.
+     * Every block is a range of elems whose states share one signature:
+     * being final (being the start) and the (symbol, block) pairs of
+     * their successors (predecessors). When a block splits, the largest
+     * part keeps its id, so only the states that point into the other
+     * parts can see their signatures change; they alone are recomputed
+     * in the next round, and each state moves to a new block at most
+     * log n times.
+     * @param forward true to compare successors, false for predecessors
+     * @return the block of each state
+     */
+    private int[] refine(boolean forward)
+    {
+        int[][] rows = rows(forward);
+        int[][] back = rows(!forward);
+        int[] block = new int[n];
+        int[] elems = new int[n];
+        int[] pos = new int[n];
+        int[] lo = new int[n + 1];
+        int[] hi = new int[n + 1];
+        Signature[] blockSig = new Signature[n + 1];
+        Signature[] sig = new Signature[n];
+        int[] group = new int[n];
+        //the touched states of each block, as linked lists
+        int[] head = new int[n + 1];
+        int[] link = new int[n];
+        Arrays.fill(head, -1);
+        int[] touched = new int[n + 1];
+        int[] moved = new int[n];
+        int[] dirty = new int[n];
+        int[] mark = new int[n];
+        int stamp = 0;
+        for(int s = 0; s < n; s++)
+        {
+            elems[s] = s;
+            pos[s] = s;
+            dirty[s] = s;
+        }
+        hi[0] = n;
+        int blocks = n > 0 ? 1 : 0;
+        int dn = n;
+        while(dn > 0)
+        {
+            //signatures against the blocks of the last round
+            int tn = 0;
+            for(int i = 0; i < dn; i++)
+            {
+                int s = dirty[i];
+                sig[s] = signature(s, forward, rows, block);
+                int b = block[s];
+                if(head[b] < 0)
+                {
+                    touched[tn++] = b;
+                }
+                link[s] = head[b];
+                head[b] = s;
+            }
+            int mn = 0;
+            for(int j = 0; j < tn; j++)
+            {
+                int b = touched[j];
+                //the untouched states keep the block signature, group 0
+                HashMap<Signature, Integer> groups = new HashMap<>();
+                int[] sizes = new int[4];
+                int end = hi[b];
+                for(int s = head[b]; s >= 0; s = link[s])
+                {
+                    int at = --end;
+                    int other = elems[at];
+                    elems[pos[s]] = other;
+                    pos[other] = pos[s];
+                    elems[at] = s;
+                    pos[s] = at;
+                }
+                int untouched = end - lo[b];
+                if(untouched > 0)
+                {
+                    groups.put(blockSig[b], 0);
+                    sizes[0] = untouched;
+                }
+                Signature[] sigs = new Signature[4];
+                sigs[0] = blockSig[b];
+                for(int s = head[b]; s >= 0; s = link[s])
+                {
+                    Integer g = groups.get(sig[s]);
+                    if(g == null)
+                    {
+                        g = groups.size();
+                        groups.put(sig[s], g);
+                        if(g == sizes.length)
+                        {
+                            sizes = Arrays.copyOf(sizes, g * 2);
+                            sigs = Arrays.copyOf(sigs, g * 2);
+                        }
+                        sigs[g] = sig[s];
+                    }
+                    group[s] = g;
+                    sizes[g]++;
+                }
+                int parts = groups.size();
+                if(parts == 1)
+                {
+                    blockSig[b] = sigs[0];
+                    head[b] = -1;
+                    continue;
+                }
+                //lay the groups out after the untouched states, in group order
+                int[] starts = new int[parts + 1];
+                starts[0] = lo[b];
+                for(int g = 0; g < parts; g++)
+                {
+                    starts[g + 1] = starts[g] + sizes[g];
+                }
+                int[] fill = Arrays.copyOf(starts, parts);
+                fill[0] += untouched;
+                for(int s = head[b]; s >= 0; s = link[s])
+                {
+                    int at = fill[group[s]]++;
+                    elems[at] = s;
+                    pos[s] = at;
+                }
+                head[b] = -1;
+                int largest = 0;
+                for(int g = 1; g < parts; g++)
+                {
+                    if(sizes[g] > sizes[largest])
+                    {
+                        largest = g;
+                    }
+                }
+                for(int g = 0; g < parts; g++)
+                {
+                    int id = g == largest ? b : blocks++;
+                    lo[id] = starts[g];
+                    hi[id] = starts[g + 1];
+                    blockSig[id] = sigs[g];
+                    if(id != b)
+                    {
+                        for(int i = starts[g]; i < starts[g + 1]; i++)
+                        {
+                            block[elems[i]] = id;
+                            moved[mn++] = elems[i];
+                        }
+                    }
+                }
+            }
+            //the states pointing into a new block
+            stamp++;
+            dn = 0;
+            for(int i = 0; i < mn; i++)
+            {
+                int t = moved[i];
+                for(int r = back[0][t]; r < back[0][t + 1]; r++)
+                {
+                    int e = back[1][r];
+                    int s = forward ? from[e] : to[e];
+                    if(mark[s] != stamp)
+                    {
+                        mark[s] = stamp;
+                        dirty[dn++] = s;
+                    }
+                }
+            }
+        }
+        return block;
+    }
+
+    /**
+     * @param s a state
+     * @param forward true to read successors, false for predecessors
+     * @param rows the transitions of each state, from rows(forward)
+     * @param block the current block of each state
+     * @return the sorted, distinct (symbol, block) pairs of s, after
+     * a mark for being final (being the start)
+     */
+    private Signature signature(int s, boolean forward, int[][] rows, int[] block)
+    {
+        int len = rows[0][s + 1] - rows[0][s];
+        long[] pairs = new long[len + 1];
+        for(int i = 0; i < len; i++)
+        {
+            int e = rows[1][rows[0][s] + i];
+            pairs[i] = ((long) on[e] << 32) | block[forward ? to[e] : from[e]];
+        }
+        Arrays.sort(pairs, 0, len);
+        int d = 0;
+        for(int i = 0; i < len; i++)
+        {
+            if(d == 0 || pairs[i] != pairs[d - 1])
+            {
+                pairs[d++] = pairs[i];
+            }
+        }
+        //pairs are never negative
+        pairs[d++] = (forward ? finals[s] : s == start) ? -1L : -2L;
+        return new Signature(Arrays.copyOf(pairs, d));
+    }
+
+    /**
+     * Merges the states of each block and drops the states without one,
+     * along with duplicate transitions
+     * @param block the new id of each state, -1 to drop it
+     */
+    private void quotient(int[] block)
+    {
+        int size = 0;
+        for(int b : block)
+        {
+            size = Math.max(size, b + 1);
+        }
+        boolean[] fin = new boolean[size];
+        int[] names = new int[size];
+        Arrays.fill(names, Integer.MAX_VALUE);
+        for(int s = 0; s < n; s++)
+        {
+            int b = block[s];
+            if(b >= 0)
+            {
+                fin[b] |= finals[s];
+                //the first name in index order stands for the block
+                names[b] = Math.min(names[b], rep[s]);
+            }
+        }
+        int k = index.symbols.length;
+        HashSet<Long> kept = new HashSet<>();
+        int m = 0;
+        for(int i = 0; i < edges; i++)
+        {
+            int f = block[from[i]];
+            int t = block[to[i]];
+            if(f >= 0 && t >= 0 && kept.add(((long) f * k + on[i]) * size + t))
+            {
+                from[m] = f;
+                on[m] = on[i];
+                to[m] = t;
+                m++;
+            }
+        }
+        start = start < 0 ? -1 : block[start];
+        n = size;
+        finals = fin;
+        rep = names;
+        edges = m;
+    }
+
+    /**
+     * @param forward true to group by source, false by sink
+     * @return the row offsets of each state and the transitions
+     * of the rows, in compressed sparse rows
+     */
+    private int[][] rows(boolean forward)
+    {
+        int[] offsets = new int[n + 1];
+        int[] ends = forward ? from : to;
+        for(int i = 0; i < edges; i++)
+        {
+            offsets[ends[i] + 1]++;
+        }
+        for(int s = 0; s < n; s++)
+        {
+            offsets[s + 1] += offsets[s];
+        }
+        int[] at = Arrays.copyOf(offsets, n);
+        int[] row = new int[edges];
+        for(int i = 0; i < edges; i++)
+        {
+            row[at[ends[i]]++] = i;
+        }
+        return new int[][]{offsets, row};
+    }
+
+    /**
+     * @param f the source state
+     * @param c the symbol id
+     * @param t the sink state
+     */
+    private void add(int f, int c, int t)
+    {
+        if(edges == from.length)
+        {
+            from = Arrays.copyOf(from, edges * 2);
+            on = Arrays.copyOf(on, edges * 2);
+            to = Arrays.copyOf(to, edges * 2);
+        }
+        from[edges] = f;
+        on[edges] = c;
+        to[edges] = t;
+        edges++;
+    }
+
+    /**
+     * @return the reduced NFA, each state named after the
+     * first state of its block
+     */
+    private NFA build()
+    {
+        NFABuilder b = new NFABuilder();
+        for(int s = 0; s < n; s++)
+        {
+            b.addState(index.states[rep[s]].getName());
+            if(finals[s])
+            {
+                b.addFinalState(index.states[rep[s]].getName());
+            }
+        }
+        if(start >= 0)
+        {
+            b.addStartState(index.states[rep[start]].getName());
+        }
+        for(int i = 0; i < edges; i++)
+        {
+            b.addSymbol(from[i], index.labels[on[i]], to[i]);
+        }
+        return b.build();
+    }
+}
@@ -0,0 +1,609 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Finds the substrings of a text that are in the language of an NFA.
+ * Both modes simulate the NFA in one pass over the text, keeping each
+ * state once per offset along with the best value of the runs in it.
+ * ALL_ENDS reads the text forwards and keeps the smallest offset a run
+ * started at, so each end comes with its leftmost start.
+ * LEFTMOST_LONGEST reads it backwards and keeps the largest offset a run
+ * from the state can reach a final state at, so each start comes with its
+ * longest end. Runs in the same state at the same offset have the same
+ * future, so the best one stands for all of them and a search takes time
+ * linear in the length of the text times the size of the NFA. States
+ * that cannot take part in a match are never kept.
+ * Positions are char offsets, a match is [start, end).
+ * Instances are immutable and can be shared by threads.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+public final class Searcher
+{
+    /**
+     * Which matches are reported
+     */
+    public enum Mode
+    {
+        /** every end offset, each with the leftmost start of a match ending there */
+        ALL_ENDS,
+        /** non overlapping matches, each the longest one at the leftmost start */
+        LEFTMOST_LONGEST
+    }
+
+    /**
+     * Receives the matches of a search
+     */
+    public interface MatchListener
+    {
+        /**
+         * @param start offset of the first char of the match
+         * @param end offset after the last char of the match
+         * @return false to stop the search
+         */
+        boolean onMatch(long start, long end);
+    }
+
+    /**
+     * Random access to the searched chars
+     */
+    private interface Text
+    {
+        long length();
+
+        char charAt(long i);
+    }
+
+    /** bytes mapped at a time */
+    private static final long WINDOW = 1L << 30;
+    /** log2 of the offsets between saved states of the backward pass */
+    private static final int BLOCK_SHIFT = 16;
+    private static final int BLOCK = 1 << BLOCK_SHIFT;
+
+    /**
+     * The states the runs of the NFA are in at one offset, each once and
+     * best value first. A step moves the runs over a char in that order
+     * and then adds new runs, whose values are worse than all of theirs,
+     * so a state reached by several runs keeps the value of the first.
+     * Forwards the values are start offsets, backwards they are ends.
+     */
+    private final class Sweep
+    {
+        private final int[] offsets;
+        private final int[] targets;
+        private final int[] epsOffsets;
+        private final int[] epsTargets;
+        /** the states a run may be kept in */
+        private final StateSet keep;
+        private int[] states;
+        private long[] values;
+        private int size;
+        private int[] nextStates;
+        private long[] nextValues;
+        private int nextSize;
+        /** the step each state was last added in, and where */
+        private final int[] added;
+        private final int[] at;
+        private final int[] stack;
+        private int step;
+
+        /**
+         * @param reversed true to move along the transitions backwards
+         */
+        Sweep(boolean reversed)
+        {
+            int n = nfa.states.length;
+            this.offsets = reversed ? revOffsets : nfa.offsets;
+            this.targets = reversed ? revTargets : nfa.targets;
+            this.epsOffsets = reversed ? revEpsOffsets : nfa.epsOffsets;
+            this.epsTargets = reversed ? revEpsTargets : nfa.epsTargets;
+            this.keep = reversed ? reachable : live;
+            this.states = new int[n];
+            this.values = new long[n];
+            this.nextStates = new int[n];
+            this.nextValues = new long[n];
+            this.added = new int[n];
+            this.at = new int[n];
+            this.stack = new int[n];
+        }
+
+        /**
+         * Starts the runs of the next offset, with none in them
+         */
+        void begin()
+        {
+            if(step == Integer.MAX_VALUE)
+            {
+                Arrays.fill(added, 0);
+                step = 0;
+            }
+            step++;
+            nextSize = 0;
+        }
+
+        /**
+         * Moves the runs of the last offset over a char
+         * @param c the symbol id of the char, -1 if it is not in the alphabet
+         */
+        void move(int c)
+        {
+            if(c < 0)
+            {
+                return;
+            }
+            for(int i = 0; i < size; i++)
+            {
+                int row = states[i] * k + c;
+                for(int j = offsets[row], end = offsets[row + 1]; j < end; j++)
+                {
+                    add(targets[j], values[i]);
+                }
+            }
+        }
+
+        /**
+         * Adds a run in s and in the states of its epsilon closure,
+         * skipping those already added at this offset
+         * @param s a state id
+         * @param value the value of the run
+         */
+        void add(int s, long value)
+        {
+            if(added[s] == step || !keep.contains(s))
+            {
+                return;
+            }
+            put(s, value);
+            int top = 0;
+            stack[top++] = s;
+            while(top > 0)
+            {
+                int u = stack[--top];
+                for(int j = epsOffsets[u], end = epsOffsets[u + 1]; j < end; j++)
+                {
+                    int t = epsTargets[j];
+                    if(added[t] != step && keep.contains(t))
+                    {
+                        put(t, value);
+                        stack[top++] = t;
+                    }
+                }
+            }
+        }
+
+        private void put(int s, long value)
+        {
+            added[s] = step;
+            at[s] = nextSize;
+            nextStates[nextSize] = s;
+            nextValues[nextSize++] = value;
+        }
+
+        /**
+         * Makes the added runs those of the current offset
+         */
+        void end()
+        {
+            int[] s = states;
+            states = nextStates;
+            nextStates = s;
+            long[] v = values;
+            values = nextValues;
+            nextValues = v;
+            size = nextSize;
+        }
+
+        /**
+         * @param s a state id
+         * @return the value of the run in s, -1 if there is none
+         */
+        long valueOf(int s)
+        {
+            return added[s] == step ? values[at[s]] : -1;
+        }
+
+        /**
+         * @return the value of the first run in a final state, -1 if none is
+         */
+        long firstFinal()
+        {
+            for(int i = 0; i < size; i++)
+            {
+                if(nfa.isFinal(states[i]))
+                {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the states of the current runs, in order
+         */
+        int[] savedStates()
+        {
+            return Arrays.copyOf(states, size);
+        }
+
+        /**
+         * @return the values of the current runs, in order
+         */
+        long[] savedValues()
+        {
+            return Arrays.copyOf(values, size);
+        }
+
+        /**
+         * Makes saved runs those of the current offset
+         * @param s their states
+         * @param v their values
+         */
+        void restore(int[] s, long[] v)
+        {
+            begin();
+            for(int i = 0; i < s.length; i++)
+            {
+                put(s[i], v[i]);
+            }
+            end();
+        }
+    }
+
+    /**
+     * The offsets where matches start, each with the end of the longest
+     * match from it, found by one backward sweep over the whole text. The
+     * sweep saves its runs every BLOCK offsets, so the starts of a block
+     * are found again, when the search reaches it, by sweeping backwards
+     * from the next saved runs. The text is read about twice backwards
+     * and the memory is the ends of a block plus the runs of each block.
+     */
+    private final class Ends
+    {
+        private final Text text;
+        private final long n;
+        private final Sweep sweep = new Sweep(true);
+        /** the runs at offset b * BLOCK, after reading text[b * BLOCK, n) backwards */
+        private final int[][] savedStates;
+        private final long[][] savedValues;
+        /** the longest end of a match from each offset of the loaded block, or -1 */
+        private final long[] ends = new long[BLOCK];
+        private long loaded = -1;
+
+        Ends(Text text)
+        {
+            this.text = text;
+            this.n = text.length();
+            int blocks = (int) (n >>> BLOCK_SHIFT) + 1;
+            this.savedStates = new int[blocks][];
+            this.savedValues = new long[blocks][];
+            back(n);
+            for(long j = n; j >= 0; j--)
+            {
+                if((j & (BLOCK - 1)) == 0)
+                {
+                    savedStates[(int) (j >>> BLOCK_SHIFT)] = sweep.savedStates();
+                    savedValues[(int) (j >>> BLOCK_SHIFT)] = sweep.savedValues();
+                }
+                if(j > 0)
+                {
+                    back(j - 1);
+                }
+            }
+        }
+
+        /**
+         * Moves the runs from offset j + 1 to offset j, or starts them at n
+         * @param j the offset, whose char is read unless j is n
+         */
+        private void back(long j)
+        {
+            sweep.begin();
+            if(j < n)
+            {
+                sweep.move(nfa.symbolOf(text.charAt(j)));
+            }
+            for(int f : finals)
+            {
+                sweep.add(f, j);
+            }
+            sweep.end();
+        }
+
+        /**
+         * @param from the smallest offset wanted
+         * @return the smallest offset from or after where a match starts, or -1
+         */
+        long next(long from)
+        {
+            for(long b = from >>> BLOCK_SHIFT; b <= n >>> BLOCK_SHIFT; b++)
+            {
+                load(b);
+                long base = b << BLOCK_SHIFT;
+                for(long j = Math.max(from, base); j < base + BLOCK && j <= n; j++)
+                {
+                    if(ends[(int) (j - base)] >= 0)
+                    {
+                        return j;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @param start an offset returned by next
+         * @return the end of the longest match from start
+         */
+        long end(long start)
+        {
+            return ends[(int) (start - (loaded << BLOCK_SHIFT))];
+        }
+
+        /**
+         * Finds the starts in a block again
+         * @param b the block
+         */
+        private void load(long b)
+        {
+            if(loaded == b)
+            {
+                return;
+            }
+            Arrays.fill(ends, -1L);
+            long base = b << BLOCK_SHIFT;
+            long hi = Math.min(base + BLOCK, n);
+            if(hi == n)
+            {
+                back(n);
+            }
+            else
+            {
+                int at = (int) (hi >>> BLOCK_SHIFT);
+                sweep.restore(savedStates[at], savedValues[at]);
+            }
+            for(long j = hi; j >= base; j--)
+            {
+                if(j < base + BLOCK)
+                {
+                    ends[(int) (j - base)] = sweep.valueOf(nfa.start);
+                }
+                if(j > base)
+                {
+                    back(j - 1);
+                }
+            }
+            loaded = b;
+        }
+    }
+
+    private final NFAIndex nfa;
+    private final int k;
+    /** the transitions turned around, in rows of target * k + symbol */
+    private final int[] revOffsets;
+    private final int[] revTargets;
+    private final int[] revEpsOffsets;
+    private final int[] revEpsTargets;
+    private final int[] finals;
+    /** the states a final state can be reached from */
+    private final StateSet live;
+    /** the states that can be reached from the start */
+    private final StateSet reachable;
+
+    /**
+     * @param nfa the indexed NFA whose language is searched for
+     */
+    Searcher(NFAIndex nfa)
+    {
+        this.nfa = nfa;
+        this.k = nfa.symbols.length;
+        int n = nfa.states.length;
+        revOffsets = new int[n * k + 1];
+        revTargets = new int[nfa.targets.length];
+        revEpsOffsets = new int[n + 1];
+        revEpsTargets = new int[nfa.epsTargets.length];
+        for(int s = 0; s < n; s++)
+        {
+            for(int c = 0; c < k; c++)
+            {
+                int row = s * k + c;
+                for(int i = nfa.offsets[row]; i < nfa.offsets[row + 1]; i++)
+                {
+                    revOffsets[nfa.targets[i] * k + c + 1]++;
+                }
+            }
+            for(int i = nfa.epsOffsets[s]; i < nfa.epsOffsets[s + 1]; i++)
+            {
+                revEpsOffsets[nfa.epsTargets[i] + 1]++;
+            }
+        }
+        Arrays.parallelPrefix(revOffsets, Integer::sum);
+        Arrays.parallelPrefix(revEpsOffsets, Integer::sum);
+        int[] fill = Arrays.copyOf(revOffsets, revOffsets.length);
+        int[] epsFill = Arrays.copyOf(revEpsOffsets, revEpsOffsets.length);
+        int m = 0;
+        int[] fin = new int[n];
+        for(int s = 0; s < n; s++)
+        {
+            for(int c = 0; c < k; c++)
+            {
+                int row = s * k + c;
+                for(int i = nfa.offsets[row]; i < nfa.offsets[row + 1]; i++)
+                {
+                    revTargets[fill[nfa.targets[i] * k + c]++] = s;
+                }
+            }
+            for(int i = nfa.epsOffsets[s]; i < nfa.epsOffsets[s + 1]; i++)
+            {
+                revEpsTargets[epsFill[nfa.epsTargets[i]]++] = s;
+            }
+            if(nfa.isFinal(s))
+            {
+                fin[m++] = s;
+            }
+        }
+        finals = Arrays.copyOf(fin, m);
+        live = nfa.live();
+        reachable = reachable(nfa);
+    }
+
+    /**
+     * @param nfa an indexed NFA
+     * @return the states that can be reached from its start
+     */
+    private static StateSet reachable(NFAIndex nfa)
+    {
+        int n = nfa.states.length;
+        int k = nfa.symbols.length;
+        long[] seen = new long[nfa.words];
+        int[] queue = new int[n];
+        int m = 0;
+        if(nfa.start >= 0)
+        {
+            seen[nfa.start >>> 6] |= 1L << nfa.start;
+            queue[m++] = nfa.start;
+        }
+        for(int i = 0; i < m; i++)
+        {
+            int s = queue[i];
+            for(int j = nfa.offsets[s * k]; j < nfa.offsets[(s + 1) * k]; j++)
+            {
+                int t = nfa.targets[j];
+                if((seen[t >>> 6] & (1L << t)) == 0)
+                {
+                    seen[t >>> 6] |= 1L << t;
+                    queue[m++] = t;
+                }
+            }
+            for(int j = nfa.epsOffsets[s]; j < nfa.epsOffsets[s + 1]; j++)
+            {
+                int t = nfa.epsTargets[j];
+                if((seen[t >>> 6] & (1L << t)) == 0)
+                {
+                    seen[t >>> 6] |= 1L << t;
+                    queue[m++] = t;
+                }
+            }
+        }
+        return new StateSet(seen);
+    }
+
+    /**
+     * @param text the text to search
+     * @param mode which matches to report
+     * @param listener receives the matches in order
+     */
+    public void search(CharSequence text, Mode mode, MatchListener listener)
+    {
+        search(new Text()
+        {
+            public long length()
+            {
+                return text.length();
+            }
+
+            public char charAt(long i)
+            {
+                return text.charAt((int) i);
+            }
+        }, mode, listener);
+    }
+
+    /**
+     * Searches a whole file through memory mapped windows. Each byte is
+     * one char, as in ISO-8859-1, so offsets are byte offsets.
+     * @param channel the file
+     * @param mode which matches to report
+     * @param listener receives the matches in order
+     * @throws IOException if the file cannot be mapped
+     */
+    public void search(FileChannel channel, Mode mode, MatchListener listener) throws IOException
+    {
+        long size = channel.size();
+        MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((size + WINDOW - 1) / WINDOW)];
+        for(int i = 0; i < windows.length; i++)
+        {
+            long pos = i * WINDOW;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos));
+        }
+        search(new Text()
+        {
+            public long length()
+            {
+                return size;
+            }
+
+            public char charAt(long i)
+            {
+                return (char) (windows[(int) (i / WINDOW)].get((int) (i % WINDOW)) & 0xff);
+            }
+        }, mode, listener);
+    }
+
+    /**
+     * Leftmost longest matches take the next start, and the end of the
+     * longest match from it, from the backward sweep and resume at that end.
+     * @param text the text to search
+     * @param mode which matches to report
+     * @param listener receives the matches
+     */
+    private void search(Text text, Mode mode, MatchListener listener)
+    {
+        if(nfa.start < 0 || !live.contains(nfa.start))
+        {
+            return;
+        }
+        if(mode == Mode.ALL_ENDS)
+        {
+            allEnds(text, listener);
+            return;
+        }
+        long n = text.length();
+        Ends ends = new Ends(text);
+        long from = 0;
+        while(from <= n)
+        {
+            long start = ends.next(from);
+            if(start < 0)
+            {
+                return;
+            }
+            long end = ends.end(start);
+            if(!listener.onMatch(start, end))
+            {
+                return;
+            }
+            from = end > start ? end : end + 1;
+        }
+    }
+
+    /**
+     * Reports every end in one forward sweep that starts a run at each
+     * offset, after the runs of earlier starts, so the first run in a
+     * final state holds the leftmost start of a match ending there.
+     * @param text the text
+     * @param listener receives the matches
+     */
+    private void allEnds(Text text, MatchListener listener)
+    {
+        long n = text.length();
+        Sweep sweep = new Sweep(false);
+        for(long i = 0; i <= n; i++)
+        {
+            sweep.begin();
+            if(i > 0)
+            {
+                sweep.move(nfa.symbolOf(text.charAt(i - 1)));
+            }
+            sweep.add(nfa.start, i);
+            sweep.end();
+            long start = sweep.firstFinal();
+            if(start >= 0 && !listener.onMatch(start, i))
+            {
+                return;
+            }
+        }
+    }
+}
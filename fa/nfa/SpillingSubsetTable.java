@@ -0,0 +1,458 @@
+package fa.nfa;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Numbers the subsets of a subset construction while keeping the
+ * heap they use under a ceiling. Subsets added since the last spill
+ * are held in a hash map and in a list. When they reach the ceiling,
+ * the list is appended to a store file, which holds every subset in
+ * id order and serves as the BFS queue, and the map is written out as
+ * a run: a file of (hash, id, words) entries sorted by hash and words.
+ * Lookups that miss the map binary search the runs through memory
+ * mapped segments, newest first. Once there are more than MAX_RUNS
+ * runs they are merged into one. All files are deleted on close.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class SpillingSubsetTable implements Closeable
+{
+    /** runs kept before they are merged */
+    static final int MAX_RUNS = 8;
+    /** the fewest subsets written per spill, whatever the ceiling */
+    static final int MIN_SPILL = 1024;
+    /** bytes mapped per segment of a run, at most */
+    private static final long SEGMENT = 1L << 30;
+    /** bytes read at a time from the store */
+    private static final int READ_AHEAD = 1 << 20;
+
+    /**
+     * A sorted file of entries mapped in segments that never
+     * cut an entry
+     */
+    private final class Run
+    {
+        final Path path;
+        final long count;
+        final long perSegment;
+        final MappedByteBuffer[] segments;
+
+        Run(Path path, long count) throws IOException
+        {
+            this.path = path;
+            this.count = count;
+            this.perSegment = Math.max(1, SEGMENT / entry);
+            this.segments = new MappedByteBuffer[(int) ((count + perSegment - 1) / perSegment)];
+            try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                for(int i = 0; i < segments.length; i++)
+                {
+                    long first = i * perSegment;
+                    long n = Math.min(perSegment, count - first);
+                    segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, first * entry, n * entry);
+                    segments[i].order(ByteOrder.nativeOrder());
+                }
+            }
+        }
+
+        /**
+         * @param set a subset
+         * @return its id, or -1 if the run does not hold it
+         */
+        int find(StateSet set)
+        {
+            long lo = 0;
+            long hi = count - 1;
+            while(lo <= hi)
+            {
+                long mid = (lo + hi) >>> 1;
+                ByteBuffer b = segments[(int) (mid / perSegment)];
+                int at = (int) (mid % perSegment) * entry;
+                int cmp = compare(b, at, set);
+                if(cmp < 0)
+                {
+                    lo = mid + 1;
+                }
+                else if(cmp > 0)
+                {
+                    hi = mid - 1;
+                }
+                else
+                {
+                    return b.getInt(at + 4);
+                }
+            }
+            return -1;
+        }
+    }
+
+    private final int words;
+    /** bytes of a subset in the store */
+    private final int record;
+    /** bytes of a run entry */
+    private final int entry;
+    /** subsets held on the heap before a spill */
+    private final int batch;
+    private final Path dir;
+    private final Path storePath;
+    private final FileChannel store;
+    private final HashMap<StateSet, Integer> recent;
+    private final ArrayList<StateSet> tail;
+    private final ArrayList<Run> runs;
+    private final ByteBuffer readBuffer;
+    /** the id of the first subset in the read buffer, and how many it holds */
+    private long readFrom;
+    private int readCount;
+    private int size;
+    private int spills;
+    private int files;
+
+    /**
+     * @param words the words of a subset
+     * @param memoryCeiling roughly the most heap bytes the subsets may use
+     * @param dir where the spill files go
+     * @throws IOException if the store cannot be created
+     */
+    SpillingSubsetTable(int words, long memoryCeiling, Path dir) throws IOException
+    {
+        this.words = words;
+        this.record = 8 * Math.max(1, words);
+        this.entry = 8 + 8 * words;
+        this.batch = (int) Math.max(MIN_SPILL, Math.min(Integer.MAX_VALUE, (memoryCeiling - READ_AHEAD) / bytesPerSubset(words)));
+        this.dir = dir;
+        this.storePath = Files.createTempFile(dir, "subsets", ".store");
+        this.store = FileChannel.open(storePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.recent = new HashMap<>();
+        this.tail = new ArrayList<>();
+        this.runs = new ArrayList<>();
+        this.readBuffer = ByteBuffer.allocate(Math.max(record, READ_AHEAD - READ_AHEAD % record)).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @param words the words of a subset
+     * @return the heap a subset takes while it is in the map and list
+     */
+    static long bytesPerSubset(int words)
+    {
+        //the subset and its words, a hash map node, a boxed id and a list slot
+        return 96L + 8L * words + 8L;
+    }
+
+    /**
+     * @return the number of subsets
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the most heap the subsets took, in bytes
+     */
+    long peakBytes()
+    {
+        return Math.min(size, batch) * bytesPerSubset(words) + readBuffer.capacity();
+    }
+
+    /**
+     * @return the number of times subsets were written out
+     */
+    int spills()
+    {
+        return spills;
+    }
+
+    /**
+     * @param set a subset
+     * @return its id, or -1 if it has not been added
+     * @throws IOException if a run cannot be read
+     */
+    int find(StateSet set) throws IOException
+    {
+        Integer id = recent.get(set);
+        if(id != null)
+        {
+            return id;
+        }
+        for(int r = runs.size() - 1; r >= 0; r--)
+        {
+            int found = runs.get(r).find(set);
+            if(found >= 0)
+            {
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param set a subset not yet added, which must not change
+     * @return the id given to it
+     * @throws IOException if spilling fails
+     */
+    int add(StateSet set) throws IOException
+    {
+        int id = size++;
+        recent.put(set, id);
+        tail.add(set);
+        if(tail.size() >= batch)
+        {
+            spill();
+        }
+        return id;
+    }
+
+    /**
+     * @param id a subset id, read in increasing order for speed
+     * @return the subset
+     * @throws IOException if the store cannot be read
+     */
+    StateSet get(int id) throws IOException
+    {
+        int tailStart = size - tail.size();
+        if(id >= tailStart)
+        {
+            return tail.get(id - tailStart);
+        }
+        if(id < readFrom || id >= readFrom + readCount)
+        {
+            readBuffer.clear();
+            long pos = (long) id * record;
+            while(readBuffer.hasRemaining() && pos + readBuffer.position() < (long) tailStart * record)
+            {
+                if(store.read(readBuffer, pos + readBuffer.position()) < 0)
+                {
+                    break;
+                }
+            }
+            readFrom = id;
+            readCount = readBuffer.position() / record;
+        }
+        long[] w = new long[words];
+        int at = (int) (id - readFrom) * record;
+        for(int i = 0; i < words; i++)
+        {
+            w[i] = readBuffer.getLong(at + 8 * i);
+        }
+        return new StateSet(w);
+    }
+
+    /**
+     * Appends the subsets on the heap to the store, writes their map
+     * as a new run and merges the runs if there are too many
+     * @throws IOException if writing fails
+     */
+    private void spill() throws IOException
+    {
+        long pos = (long) (size - tail.size()) * record;
+        ByteBuffer out = ByteBuffer.allocate(Math.max(record, READ_AHEAD - READ_AHEAD % record)).order(ByteOrder.nativeOrder());
+        for(StateSet s : tail)
+        {
+            if(out.remaining() < record)
+            {
+                pos += drain(store, out, pos);
+            }
+            for(int i = 0; i < words; i++)
+            {
+                out.putLong(s.word(i));
+            }
+            if(words == 0)
+            {
+                out.putLong(0L);
+            }
+        }
+        drain(store, out, pos);
+
+        StateSet[] sorted = recent.keySet().toArray(new StateSet[0]);
+        Arrays.sort(sorted, this::compare);
+        Path path = newFile();
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buf = ByteBuffer.allocate(Math.max(entry, READ_AHEAD - READ_AHEAD % entry)).order(ByteOrder.nativeOrder());
+            long at = 0;
+            for(StateSet s : sorted)
+            {
+                if(buf.remaining() < entry)
+                {
+                    at += drain(ch, buf, at);
+                }
+                buf.putInt(s.hashCode()).putInt(recent.get(s));
+                for(int i = 0; i < words; i++)
+                {
+                    buf.putLong(s.word(i));
+                }
+            }
+            drain(ch, buf, at);
+        }
+        runs.add(new Run(path, sorted.length));
+        recent.clear();
+        tail.clear();
+        spills++;
+        if(runs.size() > MAX_RUNS)
+        {
+            merge();
+        }
+    }
+
+    /**
+     * Merges every run into one
+     * @throws IOException if writing fails
+     */
+    private void merge() throws IOException
+    {
+        long total = 0;
+        for(Run r : runs)
+        {
+            total += r.count;
+        }
+        //the next entry of each run, smallest first
+        long[] next = new long[runs.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>((a, b) -> compareEntries(a, next[a], b, next[b]));
+        for(int r = 0; r < runs.size(); r++)
+        {
+            if(runs.get(r).count > 0)
+            {
+                heads.add(r);
+            }
+        }
+        Path path = newFile();
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buf = ByteBuffer.allocate(Math.max(entry, READ_AHEAD - READ_AHEAD % entry)).order(ByteOrder.nativeOrder());
+            long at = 0;
+            while(!heads.isEmpty())
+            {
+                int r = heads.poll();
+                Run run = runs.get(r);
+                ByteBuffer b = run.segments[(int) (next[r] / run.perSegment)];
+                int from = (int) (next[r] % run.perSegment) * entry;
+                if(buf.remaining() < entry)
+                {
+                    at += drain(ch, buf, at);
+                }
+                buf.put(b.slice(from, entry));
+                if(++next[r] < run.count)
+                {
+                    heads.add(r);
+                }
+            }
+            drain(ch, buf, at);
+        }
+        for(Run r : runs)
+        {
+            Files.deleteIfExists(r.path);
+        }
+        runs.clear();
+        runs.add(new Run(path, total));
+    }
+
+    /**
+     * @param a a run
+     * @param i an entry of run a
+     * @param b another run
+     * @param j an entry of run b
+     * @return the order of the two entries
+     */
+    private int compareEntries(int a, long i, int b, long j)
+    {
+        Run ra = runs.get(a);
+        Run rb = runs.get(b);
+        ByteBuffer x = ra.segments[(int) (i / ra.perSegment)];
+        ByteBuffer y = rb.segments[(int) (j / rb.perSegment)];
+        int xa = (int) (i % ra.perSegment) * entry;
+        int ya = (int) (j % rb.perSegment) * entry;
+        int cmp = Integer.compare(x.getInt(xa), y.getInt(ya));
+        for(int w = 0; cmp == 0 && w < words; w++)
+        {
+            cmp = Long.compare(x.getLong(xa + 8 + 8 * w), y.getLong(ya + 8 + 8 * w));
+        }
+        return cmp;
+    }
+
+    /**
+     * @param a a subset
+     * @param b another subset
+     * @return their order in a run
+     */
+    private int compare(StateSet a, StateSet b)
+    {
+        int cmp = Integer.compare(a.hashCode(), b.hashCode());
+        for(int w = 0; cmp == 0 && w < words; w++)
+        {
+            cmp = Long.compare(a.word(w), b.word(w));
+        }
+        return cmp;
+    }
+
+    /**
+     * @param b a run segment
+     * @param at the first byte of an entry
+     * @param set a subset
+     * @return the order of the entry and the subset
+     */
+    private int compare(ByteBuffer b, int at, StateSet set)
+    {
+        int cmp = Integer.compare(b.getInt(at), set.hashCode());
+        for(int w = 0; cmp == 0 && w < words; w++)
+        {
+            cmp = Long.compare(b.getLong(at + 8 + 8 * w), set.word(w));
+        }
+        return cmp;
+    }
+
+    /**
+     * Writes out a filled buffer and clears it
+     * @param ch the file
+     * @param buf the bytes
+     * @param pos where they go in the file
+     * @return the number of bytes written
+     * @throws IOException if writing fails
+     */
+    private static int drain(FileChannel ch, ByteBuffer buf, long pos) throws IOException
+    {
+        buf.flip();
+        int n = buf.remaining();
+        while(buf.hasRemaining())
+        {
+            ch.write(buf, pos + n - buf.remaining());
+        }
+        buf.clear();
+        return n;
+    }
+
+    /**
+     * @return a new, empty spill file
+     * @throws IOException if it cannot be created
+     */
+    private Path newFile() throws IOException
+    {
+        return Files.createTempFile(dir, "subsets" + (files++), ".run");
+    }
+
+    /**
+     * Deletes the spill files
+     * @throws IOException if a file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException
+    {
+        store.close();
+        Files.deleteIfExists(storePath);
+        for(Run r : runs)
+        {
+            Files.deleteIfExists(r.path);
+        }
+        runs.clear();
+    }
+}
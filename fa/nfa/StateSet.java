@@ -0,0 +1,189 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of NFA state ids stored as a bitset.
+ * The hash is computed once on construction so subsets can
+ * be deduplicated through a hash table in constant time.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class StateSet
+{
+    private final long[] words;
+    private final int hash;
+
+    /**
+     * Wraps the given words, the caller must not modify them afterwards
+     * @param words the bitset, one bit per state id
+     */
+    StateSet(long[] words)
+    {
+        this.words = words;
+        this.hash = Arrays.hashCode(words);
+    }
+
+    /**
+     * @param words a scratch bitset
+     * @return a set holding a private copy of words
+     */
+    static StateSet copyOf(long[] words)
+    {
+        return new StateSet(words.clone());
+    }
+
+    /**
+     * @param size the number of state ids
+     * @return the number of longs needed for a bitset over size ids
+     */
+    static int wordsFor(int size)
+    {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * @param i the index of a word of the bitset
+     * @return the word
+     */
+    long word(int i)
+    {
+        return words[i];
+    }
+
+    /**
+     * @param id a state id
+     * @return true if id is a member of this set
+     */
+    boolean contains(int id)
+    {
+        return (words[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * @param from the first id to look at
+     * @return the smallest member that is at least from, or -1
+     */
+    int nextSetBit(int from)
+    {
+        int w = from >>> 6;
+        if(w >= words.length)
+        {
+            return -1;
+        }
+        long word = words[w] & (-1L << from);
+        while(true)
+        {
+            if(word != 0)
+            {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if(++w == words.length)
+            {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * @return true if no state is a member
+     */
+    boolean isEmpty()
+    {
+        for(long word : words)
+        {
+            if(word != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of members
+     */
+    int size()
+    {
+        int count = 0;
+        for(long word : words)
+        {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * ORs this set into the given scratch bitset
+     * @param target a bitset at least as long
+     */
+    void orInto(long[] target)
+    {
+        for(int i = 0; i < words.length; i++)
+        {
+            target[i] |= words[i];
+        }
+    }
+
+    /**
+     * @param other a set over the same ids
+     * @return true if the two sets share a member
+     */
+    boolean intersects(StateSet other)
+    {
+        return intersects(other.words);
+    }
+
+    /**
+     * @param other a bitset over the same ids
+     * @return true if the two sets share a member
+     */
+    boolean intersects(long[] other)
+    {
+        for(int i = 0; i < words.length; i++)
+        {
+            if((words[i] & other[i]) != 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param other a set over the same ids
+     * @return true if every member of this set is a member of other
+     */
+    boolean isSubsetOf(StateSet other)
+    {
+        for(int i = 0; i < words.length; i++)
+        {
+            if((words[i] & ~other.words[i]) != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(this == o)
+        {
+            return true;
+        }
+        if(!(o instanceof StateSet))
+        {
+            return false;
+        }
+        StateSet other = (StateSet) o;
+        return hash == other.hash && Arrays.equals(words, other.words);
+    }
+}
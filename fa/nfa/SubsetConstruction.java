@@ -0,0 +1,533 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import fa.FAStats;
+import fa.dfa.DFA;
+import fa.dfa.Minimizer;
+import fa.dfa.OffHeapDFA;
+
+/**
+ * Determinizes an indexed NFA with the subset construction.
+ * Subsets are bitsets deduplicated through a hash table, and
+ * DFA states are numbered in the order they are discovered.
+ * Each run is reported as a fa.Determinize JFR event and to FAStats.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class SubsetConstruction
+{
+    private final NFAIndex index;
+    private final HashMap<StateSet, Integer> table;
+    private final ArrayList<StateSet> subsets;
+    private int[] delta;
+    /** where the sequential search writes transitions instead of delta */
+    private OffHeapDFA.Builder sink;
+    /** the NFA states that can reach a final state, set with sink */
+    private StateSet live;
+    /** the subsets of a memory bounded search, null otherwise */
+    private SpillingSubsetTable spilled;
+    /** the previous construction of the NFA, null if there is none */
+    private SubsetReuse reuse;
+    private int levels;
+    private int largestFrontier;
+
+    /**
+     * @param index the NFA to determinize
+     */
+    SubsetConstruction(NFAIndex index)
+    {
+        this(index, null);
+    }
+
+    /**
+     * @param index the NFA to determinize
+     * @param reuse the previous construction of the NFA before it was
+     * extended, or null to compute every successor
+     */
+    SubsetConstruction(NFAIndex index, SubsetReuse reuse)
+    {
+        this.index = index;
+        this.table = new HashMap<>();
+        this.subsets = new ArrayList<>();
+        this.delta = new int[64];
+        this.reuse = reuse;
+    }
+
+    /**
+     * @param next the index of the NFA after it was extended
+     * @param symDirty the states given symbol transitions since this run
+     * @param epsDirty the states given epsilon transitions since this run
+     * @return the parts of this run the next one can reuse
+     */
+    SubsetReuse reuse(NFAIndex next, Set<NFAState> symDirty, Set<NFAState> epsDirty)
+    {
+        return new SubsetReuse(index, subsets, delta, next, symDirty, epsDirty);
+    }
+
+    /**
+     * Explores every subset reachable from the start state
+     * @param minimize true to merge equivalent subsets
+     * @return the equivalent DFA
+     */
+    DFA run(boolean minimize)
+    {
+        DeterminizeEvent event = begin();
+        long t = System.nanoTime();
+        explore();
+        return finish(minimize, false, event, t);
+    }
+
+    /**
+     * Explores every subset reachable from the start state, computing
+     * the successors of each BFS level in parallel. Subsets are numbered
+     * exactly as in the sequential construction.
+     * @param minimize true to merge equivalent subsets
+     * @param pool the pool that computes the successors
+     * @return the equivalent DFA
+     */
+    DFA run(boolean minimize, ForkJoinPool pool)
+    {
+        DeterminizeEvent event = begin();
+        long t = System.nanoTime();
+        explore(pool);
+        return finish(minimize, true, event, t);
+    }
+
+    /**
+     * Explores every subset reachable from the start state and writes
+     * the transitions straight into off-heap memory, so the only table
+     * on the heap is the one deduplicating the subsets. Like a compiled
+     * DFA, the result goes to DEAD instead of into a subset without a
+     * live NFA state, such as [], so matching stops there.
+     * @return the equivalent DFA, without state names
+     */
+    OffHeapDFA runOffHeap()
+    {
+        DeterminizeEvent event = begin();
+        long t = System.nanoTime();
+        sink = new OffHeapDFA.Builder(index.labels);
+        live = index.live();
+        explore();
+        long explored = System.nanoTime();
+        reuse = null;
+        for(int i = 0; i < subsets.size(); i++)
+        {
+            if(index.isFinal(subsets.get(i)))
+            {
+                sink.setFinal(i);
+            }
+        }
+        OffHeapDFA dfa = sink.build(subsets.size(), index.startSet().intersects(live) ? 0 : OffHeapDFA.DEAD);
+        sink = null;
+        long built = System.nanoTime();
+        report(false, false, event, t, explored, explored, built, dfa.getStateCount());
+        return dfa;
+    }
+
+    /**
+     * Explores every subset reachable from the start state like
+     * runOffHeap, but keeps the subsets in a table that spills them to
+     * disk whenever those on the heap reach the ceiling
+     * @param memoryCeiling roughly the most heap bytes the subsets may use
+     * @param dir where the spill files go, deleted when the run ends
+     * @return the equivalent DFA, without state names
+     * @throws IOException if the spill files cannot be written or read
+     */
+    OffHeapDFA runSpilling(long memoryCeiling, Path dir) throws IOException
+    {
+        DeterminizeEvent event = begin();
+        long t = System.nanoTime();
+        int k = index.symbols.length;
+        long[] scratch = new long[index.words];
+        OffHeapDFA.Builder out = new OffHeapDFA.Builder(index.labels);
+        live = index.live();
+        try(SpillingSubsetTable subsets = new SpillingSubsetTable(index.words, memoryCeiling, dir))
+        {
+            spilled = subsets;
+            intern(subsets, out, index.startSet());
+
+            //the subset table doubles as the BFS queue, read in id order
+            int levelEnd = 0;
+            for(int i = 0; i < subsets.size(); i++)
+            {
+                if(i == levelEnd)
+                {
+                    levelEnd = subsets.size();
+                    level(levelEnd - i);
+                }
+                StateSet s = subsets.get(i);
+                for(int c = 0; c < k; c++)
+                {
+                    step(s, c, scratch);
+                    int id = subsets.find(new StateSet(scratch));
+                    if(id < 0)
+                    {
+                        id = intern(subsets, out, StateSet.copyOf(scratch));
+                    }
+                    if(live.intersects(scratch))
+                    {
+                        out.setTransition(i, c, id);
+                    }
+                }
+            }
+            long explored = System.nanoTime();
+            reuse = null;
+            OffHeapDFA dfa = out.build(subsets.size(), index.startSet().intersects(live) ? 0 : OffHeapDFA.DEAD);
+            long built = System.nanoTime();
+            report(false, false, event, t, explored, explored, built, dfa.getStateCount());
+            return dfa;
+        }
+    }
+
+    /**
+     * @param subsets the table of a memory bounded search
+     * @param out the DFA being built
+     * @param set a subset not yet in the table
+     * @return the id assigned to it
+     * @throws IOException if the table spills and fails
+     */
+    private int intern(SpillingSubsetTable subsets, OffHeapDFA.Builder out, StateSet set) throws IOException
+    {
+        int id = subsets.add(set);
+        if(index.isFinal(set))
+        {
+            out.setFinal(id);
+        }
+        return id;
+    }
+
+    /**
+     * @return the number of subsets found so far
+     */
+    private int discovered()
+    {
+        return spilled != null ? spilled.size() : subsets.size();
+    }
+
+    /**
+     * @return a begun event, or null if FAStats is not tracing
+     */
+    private static DeterminizeEvent begin()
+    {
+        if(!FAStats.isTracing())
+        {
+            return null;
+        }
+        DeterminizeEvent event = new DeterminizeEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Builds the DFA after the search and reports the run to JFR and
+     * FAStats. Every successor computed is either a new subset or a
+     * dedupe hit, so neither needs counting inside the search.
+     * @param minimize true to merge equivalent subsets
+     * @param parallel true if the search ran in parallel
+     * @param event the event begun with the search, or null
+     * @param start System.nanoTime() when the search began
+     * @return the equivalent DFA
+     */
+    private DFA finish(boolean minimize, boolean parallel, DeterminizeEvent event, long start)
+    {
+        long explored = System.nanoTime();
+        //the next run only needs this one, not the one before
+        reuse = null;
+        int[] blockOf = minimize ? partition() : null;
+        long minimized = System.nanoTime();
+        DFA dfa = minimize ? build(blockOf, blocks(blockOf)) : build();
+        long built = System.nanoTime();
+
+        report(minimize, parallel, event, start, explored, minimized, built, dfa.getStates().size());
+        return dfa;
+    }
+
+    /**
+     * Reports a run to JFR and FAStats
+     * @param minimize true if equivalent subsets were merged
+     * @param parallel true if the search ran in parallel
+     * @param event the event begun with the search, or null
+     * @param start System.nanoTime() when the search began
+     * @param explored System.nanoTime() when the search ended
+     * @param minimized System.nanoTime() when merging ended
+     * @param built System.nanoTime() when the DFA was built
+     * @param dfaStates the number of DFA states
+     */
+    private void report(boolean minimize, boolean parallel, DeterminizeEvent event, long start, long explored, long minimized, long built, int dfaStates)
+    {
+        int n = discovered();
+        long transitions = (long) n * index.symbols.length;
+        long hits = transitions - (n - 1);
+        //a subset, its words, hash map node, boxed id and list and bucket slots
+        long tableBytes = spilled != null ? spilled.peakBytes() : n * (96L + 8L * index.words) + 4L * delta.length;
+        if(event != null && event.shouldCommit())
+        {
+            event.nfaStates = index.states.length;
+            event.symbols = index.symbols.length;
+            event.parallel = parallel;
+            event.minimized = minimize;
+            event.subsets = n;
+            event.transitions = transitions;
+            event.dedupeHits = hits;
+            event.levels = levels;
+            event.largestFrontier = largestFrontier;
+            event.tableBytes = tableBytes;
+            event.dfaStates = dfaStates;
+            event.exploreNanos = explored - start;
+            event.minimizeNanos = minimized - explored;
+            event.buildNanos = built - minimized;
+            event.commit();
+        }
+        if(FAStats.isOn())
+        {
+            FAStats.determinized(built - start, n, transitions, hits, largestFrontier, tableBytes);
+        }
+    }
+
+    /**
+     * Records the start of a search level
+     * @param frontier the subsets in the level
+     */
+    private void level(int frontier)
+    {
+        levels++;
+        largestFrontier = Math.max(largestFrontier, frontier);
+        if(FAStats.isTracing())
+        {
+            FrontierEvent event = new FrontierEvent();
+            if(event.isEnabled())
+            {
+                event.level = levels;
+                event.frontier = frontier;
+                event.subsets = discovered();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Breadth first search over the subsets
+     */
+    private void explore()
+    {
+        int k = index.symbols.length;
+        long[] scratch = new long[index.words];
+        intern(index.startSet());
+
+        //the subset list doubles as the BFS queue
+        int levelEnd = 0;
+        for(int i = 0; i < subsets.size(); i++)
+        {
+            if(i == levelEnd)
+            {
+                levelEnd = subsets.size();
+                level(levelEnd - i);
+            }
+            StateSet s = subsets.get(i);
+            grow(i + 1);
+            for(int c = 0; c < k; c++)
+            {
+                step(s, c, scratch);
+                Integer id = table.get(new StateSet(scratch));
+                if(id == null)
+                {
+                    id = intern(StateSet.copyOf(scratch));
+                }
+                if(sink != null)
+                {
+                    //cells never set are DEAD
+                    if(live.intersects(scratch))
+                    {
+                        sink.setTransition(i, c, id);
+                    }
+                }
+                else
+                {
+                    delta[i * k + c] = id;
+                }
+            }
+        }
+    }
+
+    /**
+     * Breadth first search over the subsets, one level at a time.
+     * The table is only read while a level is expanded in parallel.
+     * Subsets it does not hold yet are deduplicated in a concurrent map
+     * that remembers the first (subset, symbol) position producing them,
+     * and are then numbered in position order, which is the order the
+     * sequential search would have found them in.
+     * @param pool the pool that computes the successors
+     */
+    private void explore(ForkJoinPool pool)
+    {
+        int k = index.symbols.length;
+        intern(index.startSet());
+        int levelStart = 0;
+        while(levelStart < subsets.size())
+        {
+            int from = levelStart;
+            int to = subsets.size();
+            level(to - from);
+            grow(to);
+            StateSet[] fresh = new StateSet[(to - from) * k];
+            ConcurrentHashMap<StateSet, Integer> firstSeen = new ConcurrentHashMap<>();
+            pool.submit(() -> IntStream.range(from, to).parallel().forEach(i ->
+            {
+                long[] scratch = new long[index.words];
+                StateSet s = subsets.get(i);
+                for(int c = 0; c < k; c++)
+                {
+                    step(s, c, scratch);
+                    Integer id = table.get(new StateSet(scratch));
+                    if(id != null)
+                    {
+                        delta[i * k + c] = id;
+                    }
+                    else
+                    {
+                        int pos = (i - from) * k + c;
+                        StateSet set = StateSet.copyOf(scratch);
+                        fresh[pos] = set;
+                        firstSeen.merge(set, pos, Math::min);
+                    }
+                }
+            })).join();
+
+            for(int pos = 0; pos < fresh.length; pos++)
+            {
+                if(fresh[pos] != null)
+                {
+                    int first = firstSeen.get(fresh[pos]);
+                    delta[from * k + pos] = first == pos ? intern(fresh[pos]) : delta[from * k + first];
+                }
+            }
+            levelStart = to;
+        }
+    }
+
+    /**
+     * Takes a successor from the previous construction if it is
+     * still right, or computes it
+     * @param from the source subset
+     * @param c a symbol id
+     * @param scratch a bitset of words longs, overwritten
+     */
+    private void step(StateSet from, int c, long[] scratch)
+    {
+        if(reuse == null || !reuse.successor(from, c, scratch))
+        {
+            index.step(from, c, scratch);
+        }
+    }
+
+    /**
+     * Makes room in the transition table
+     * @param rows the number of subsets it must hold
+     */
+    private void grow(int rows)
+    {
+        int k = index.symbols.length;
+        if(sink == null && delta.length < rows * k)
+        {
+            delta = Arrays.copyOf(delta, Math.max(delta.length * 2, rows * k));
+        }
+    }
+
+    /**
+     * @param set a subset not yet in the table
+     * @return the id assigned to it
+     */
+    private int intern(StateSet set)
+    {
+        int id = subsets.size();
+        table.put(set, id);
+        subsets.add(set);
+        return id;
+    }
+
+    /**
+     * @return a DFA with one state per discovered subset
+     */
+    private DFA build()
+    {
+        int[] blockOf = new int[subsets.size()];
+        for(int i = 0; i < blockOf.length; i++)
+        {
+            blockOf[i] = i;
+        }
+        return build(blockOf, blockOf.length);
+    }
+
+    /**
+     * Merges equivalent subsets with Hopcroft's algorithm
+     * @return the DFA state of every subset
+     */
+    private int[] partition()
+    {
+        int n = subsets.size();
+        long[] finals = new long[StateSet.wordsFor(n)];
+        for(int i = 0; i < n; i++)
+        {
+            if(index.isFinal(subsets.get(i)))
+            {
+                finals[i >>> 6] |= 1L << i;
+            }
+        }
+        //the table is complete, so the extra dead state is never reached
+        return Minimizer.partition(delta, index.symbols.length, n, finals, 0);
+    }
+
+    /**
+     * @param blockOf the DFA state of every subset
+     * @return the number of DFA states
+     */
+    private int blocks(int[] blockOf)
+    {
+        int blocks = 0;
+        for(int i = 0; i < subsets.size(); i++)
+        {
+            blocks = Math.max(blocks, blockOf[i] + 1);
+        }
+        return blocks;
+    }
+
+    /**
+     * @param blockOf the DFA state of every subset
+     * @param blocks the number of DFA states
+     * @return a DFA whose states are named after their first subset
+     */
+    private DFA build(int[] blockOf, int blocks)
+    {
+        int k = index.symbols.length;
+        DFA dfa = new DFA();
+        SubsetState[] dstates = new SubsetState[blocks];
+        int[] rep = new int[blocks];
+        for(int i = 0; i < subsets.size(); i++)
+        {
+            int b = blockOf[i];
+            if(dstates[b] == null)
+            {
+                StateSet s = subsets.get(i);
+                dstates[b] = new SubsetState(index, s, index.isFinal(s));
+                rep[b] = i;
+                dfa.addState(dstates[b], i == 0);
+            }
+        }
+        for(int b = 0; b < blocks; b++)
+        {
+            for(int c = 0; c < k; c++)
+            {
+                dfa.addTransition(dstates[b], index.labels[c], dstates[blockOf[delta[rep[b] * k + c]]]);
+            }
+        }
+        return dfa;
+    }
+}
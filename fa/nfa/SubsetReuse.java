@@ -0,0 +1,138 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * The subsets and transitions of the previous subset construction of
+ * an NFA that has been extended since, translated to the ids of its new
+ * index, so the next construction only computes the successors that
+ * the changes can affect. The successor of a subset S on a symbol is
+ * the closure of the moves of its members, so the old successor T is
+ * still right unless a member of S has new transitions on symbols, or
+ * T holds a state with new epsilon transitions, since a closure that
+ * changed holds such a state. New symbols split old ones, so a new
+ * symbol reads the old symbol holding its chars, and a subset without
+ * new transitions cannot move on a char that is new to the alphabet.
+ * Only read once built, so a parallel construction can share it.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class SubsetReuse
+{
+    private final NFAIndex old;
+    private final NFAIndex index;
+    private final int[] delta;
+    /** the old subsets in new ids */
+    private final StateSet[] subsets;
+    /** the old id of each old subset without new symbol transitions */
+    private final HashMap<StateSet, Integer> clean;
+    /** the states with new epsilon transitions, in new ids */
+    private final StateSet epsDirty;
+    /** the old symbol of each new symbol, -1 for a new char */
+    private final int[] oldSymbol;
+
+    /**
+     * @param old the index of the previous construction
+     * @param oldSubsets its subsets, in the order of their ids
+     * @param delta its transitions, subset id * symbols + symbol
+     * @param index the index of the extended NFA
+     * @param symDirty the states given symbol transitions since
+     * @param epsDirty the states given epsilon transitions since
+     */
+    SubsetReuse(NFAIndex old, ArrayList<StateSet> oldSubsets, int[] delta, NFAIndex index, Set<NFAState> symDirty, Set<NFAState> epsDirty)
+    {
+        this.old = old;
+        this.index = index;
+        this.delta = delta;
+        int[] newId = new int[old.states.length];
+        //new states named after all old ones keep the old ids
+        boolean same = true;
+        for(int i = 0; i < newId.length; i++)
+        {
+            newId[i] = index.idOf(old.states[i]);
+            same &= newId[i] == i;
+        }
+        StateSet sym = ids(symDirty);
+        this.epsDirty = ids(epsDirty);
+        this.subsets = new StateSet[oldSubsets.size()];
+        this.clean = new HashMap<>();
+        for(int i = 0; i < subsets.length; i++)
+        {
+            StateSet s = oldSubsets.get(i);
+            long[] w = new long[index.words];
+            if(same)
+            {
+                s.orInto(w);
+            }
+            else
+            {
+                for(int t = s.nextSetBit(0); t >= 0; t = s.nextSetBit(t + 1))
+                {
+                    int id = newId[t];
+                    w[id >>> 6] |= 1L << id;
+                }
+            }
+            subsets[i] = new StateSet(w);
+            if(!subsets[i].intersects(sym))
+            {
+                clean.put(subsets[i], i);
+            }
+        }
+        oldSymbol = new int[index.symbols.length];
+        for(int c = 0; c < oldSymbol.length; c++)
+        {
+            oldSymbol[c] = old.symbolOf(index.labels[c].first());
+        }
+    }
+
+    /**
+     * @param states states of the extended NFA
+     * @return their ids in its index
+     */
+    private StateSet ids(Set<NFAState> states)
+    {
+        long[] w = new long[index.words];
+        for(NFAState s : states)
+        {
+            int id = index.idOf(s);
+            if(id >= 0)
+            {
+                w[id >>> 6] |= 1L << id;
+            }
+        }
+        return new StateSet(w);
+    }
+
+    /**
+     * Fills in a successor from the previous construction if it
+     * cannot have changed
+     * @param from a subset of the extended NFA
+     * @param c a symbol id of the extended NFA
+     * @param scratch a bitset of words longs, overwritten on success
+     * @return true if scratch holds the successor, false if it has
+     * to be computed
+     */
+    boolean successor(StateSet from, int c, long[] scratch)
+    {
+        Integer id = clean.get(from);
+        if(id == null)
+        {
+            return false;
+        }
+        int oc = oldSymbol[c];
+        Arrays.fill(scratch, 0L);
+        if(oc < 0)
+        {
+            return true;
+        }
+        StateSet to = subsets[delta[id * old.symbols.length + oc]];
+        if(to.intersects(epsDirty))
+        {
+            return false;
+        }
+        to.orInto(scratch);
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package fa.nfa;
+
+import fa.dfa.DFAState;
+
+/**
+ * A DFA state produced by the subset construction.
+ * Its "[a, b]" label is only built the first time the
+ * name is asked for, e.g. when the DFA is printed.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+class SubsetState extends DFAState
+{
+    private final NFAIndex index;
+    private final StateSet subset;
+
+    /**
+     * @param index the NFA the subset ranges over
+     * @param subset the NFA states this DFA state stands for
+     * @param isFinal true if the subset holds a final state
+     */
+    SubsetState(NFAIndex index, StateSet subset, boolean isFinal)
+    {
+        super(null, isFinal);
+        this.index = index;
+        this.subset = subset;
+    }
+
+    /**
+     * @return the NFA states this DFA state stands for
+     */
+    StateSet getSubset()
+    {
+        return subset;
+    }
+
+    @Override
+    public String getName()
+    {
+        if(name == null)
+        {
+            name = index.label(subset);
+        }
+        return name;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getName();
+    }
+}
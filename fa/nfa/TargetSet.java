@@ -0,0 +1,76 @@
+package fa.nfa;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only set of NFA states backed by one row of the
+ * compressed transition arrays of an NFAIndex. It iterates
+ * in id order and answers contains with a binary search.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+final class TargetSet extends AbstractSet<NFAState>
+{
+    private final NFAIndex index;
+    private final int[] ids;
+    private final int from;
+    private final int to;
+
+    /**
+     * @param index the index the ids belong to
+     * @param ids the target array
+     * @param from the first id of the row
+     * @param to the end of the row
+     */
+    TargetSet(NFAIndex index, int[] ids, int from, int to)
+    {
+        this.index = index;
+        this.ids = ids;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public int size()
+    {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        if(!(o instanceof NFAState))
+        {
+            return false;
+        }
+        int id = index.idOf((NFAState) o);
+        return id >= 0 && Arrays.binarySearch(ids, from, to, id) >= 0;
+    }
+
+    @Override
+    public Iterator<NFAState> iterator()
+    {
+        return new Iterator<NFAState>()
+        {
+            private int i = from;
+
+            @Override
+            public boolean hasNext()
+            {
+                return i < to;
+            }
+
+            @Override
+            public NFAState next()
+            {
+                if(i >= to)
+                {
+                    throw new NoSuchElementException();
+                }
+                return index.states[ids[i++]];
+            }
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package fa.dfa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a DFA with missing transitions is exported
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+class DFAExportTest {
+
+	@Test
+	void missingTransitionIsAnEmptyCell(){
+		DFA dfa = new DFABuilder()
+				.addStartState("a")
+				.addFinalState("b")
+				.addTransition("a", '0', "b")
+				.addTransition("a", '1', "a")
+				.addTransition("b", '0', "a")
+				.build();
+		assertEquals("Q = { a b }\n"
+				+ "Sigma = { 0 1 }\n"
+				+ "delta =\n"
+				+ "                   0         1\n"
+				+ "         a         b         a\n"
+				+ "         b         a          \n"
+				+ "q0 = a\n"
+				+ "F = { b }\n", dfa.toString());
+	}
+}
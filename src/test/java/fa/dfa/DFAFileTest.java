@@ -0,0 +1,114 @@
+package fa.dfa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that DFA files map back to the DFA they were written from,
+ * and that a corrupt header is rejected when the file is mapped
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+class DFAFileTest {
+
+	@TempDir
+	Path dir;
+	private Path file;
+	private CompiledDFA compiled;
+	private byte[] bytes;
+
+	@BeforeEach
+	void write() throws IOException{
+		DFA dfa = new DFABuilder()
+				.addStartState("even")
+				.addFinalState("odd")
+				.addTransition("even", 'a', "odd")
+				.addTransition("odd", 'a', "even")
+				.addTransition("even", 'b', "even")
+				.addTransition("odd", 'b', "odd")
+				.build();
+		compiled = dfa.compile();
+		file = dir.resolve("dfa.bin");
+		DFAFile.write(dfa, file);
+		bytes = Files.readAllBytes(file);
+	}
+
+	/**
+	 * @param at a byte offset
+	 * @return the little endian int there
+	 */
+	private int intAt(long at){
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt((int) at);
+	}
+
+	/**
+	 * Writes the file with one int changed and checks it is rejected
+	 * @param at the byte offset of the int
+	 * @param value its new value
+	 */
+	private void assertRejected(long at, int value) throws IOException{
+		byte[] copy = bytes.clone();
+		ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt((int) at, value);
+		Path bad = dir.resolve("bad.bin");
+		Files.write(bad, copy);
+		assertThrows(IOException.class, () -> DFAFile.map(bad), at + " = " + value);
+	}
+
+	@Test
+	void mapsWhatWasWritten() throws IOException{
+		MappedDFA mapped = DFAFile.map(file);
+		assertEquals(compiled.getStart(), mapped.getStart());
+		assertEquals(compiled.getStateCount(), mapped.getStateCount());
+		for(int s = 0; s < compiled.getStateCount(); s++){
+			assertEquals(compiled.isFinal(s), mapped.isFinal(s));
+			for(char c : "abc".toCharArray()){
+				assertEquals(compiled.step(s, c), mapped.step(s, c));
+			}
+		}
+		assertEquals("even", mapped.getLabel(0));
+		assertEquals("odd", mapped.getLabel(1));
+	}
+
+	@Test
+	void rejectsCorruptHeaders() throws IOException{
+		assertRejected(0, 0x12345678);
+		assertRejected(4, DFAFile.VERSION + 1);
+		assertRejected(8, 6);
+		assertRejected(12, -1);
+		assertRejected(12, Integer.MAX_VALUE);
+		assertRejected(16, Character.MAX_VALUE + 2);
+		assertRejected(20, 2);
+		assertRejected(20, -2);
+		assertRejected(24, Character.MAX_VALUE + 2);
+		assertRejected(24, 1 << 16);
+	}
+
+	@Test
+	void rejectsCorruptSections() throws IOException{
+		int states = intAt(12);
+		int classes = intAt(16);
+		long classOfAt = DFAFile.align(DFAFile.HEADER + 2L * classes);
+		assertRejected(classOfAt + 4L * 'a', classes);
+		long finalsAt = DFAFile.align(classOfAt + 4L * intAt(24));
+		long tableAt = finalsAt + 8L * ((states + 63) >>> 6);
+		long offsetsAt = DFAFile.align(tableAt + 4L * states * classes);
+		assertRejected(offsetsAt, 1);
+		assertRejected(offsetsAt + 4L * states, bytes.length);
+
+		Path truncated = dir.resolve("truncated.bin");
+		Files.write(truncated, Arrays.copyOf(bytes, (int) tableAt));
+		assertThrows(IOException.class, () -> DFAFile.map(truncated));
+		Files.write(truncated, Arrays.copyOf(bytes, DFAFile.HEADER - 1));
+		assertThrows(IOException.class, () -> DFAFile.map(truncated));
+	}
+}
@@ -0,0 +1,53 @@
+package fa.dfa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the witnesses of the equivalence and inclusion checks
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+class EquivalenceTest {
+
+	/**
+	 * @param on the chars that lead to the final state
+	 * @return a DFA accepting exactly the one char strings over on
+	 */
+	private static DFA oneOf(String on){
+		DFABuilder b = new DFABuilder().addStartState("q0").addFinalState("q1");
+		for(char c : on.toCharArray()){
+			b.addTransition("q0", c, "q1");
+		}
+		return b.build();
+	}
+
+	@Test
+	void witnessAvoidsE(){
+		//f is tried before e, so it spells the witness
+		String w = oneOf("ef").differenceWitness(new DFABuilder().addStartState("q0").build());
+		assertEquals("f", w);
+		assertTrue(oneOf("ef").compile().accepts(w));
+		assertEquals("f", oneOf("ef").inclusionWitness(oneOf("g")));
+	}
+
+	@Test
+	void loneEWitnessIsAChar(){
+		String w = oneOf("e").differenceWitness(new DFABuilder().addStartState("q0").build());
+		assertEquals("e", w);
+		//accepts reads it as the empty string, a matcher as a char
+		assertFalse(oneOf("e").compile().accepts(w));
+		DFAMatcher m = oneOf("e").compile().matcher();
+		m.feed(w);
+		assertTrue(m.isAccepting());
+	}
+
+	@Test
+	void equalLanguagesHaveNoWitness(){
+		assertNull(oneOf("ab").differenceWitness(oneOf("ba")));
+		assertNull(oneOf("a").inclusionWitness(oneOf("ab")));
+	}
+}
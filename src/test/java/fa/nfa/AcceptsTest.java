@@ -0,0 +1,79 @@
+package fa.nfa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fa.CharClass;
+import fa.dfa.CompiledDFA;
+import fa.dfa.DFA;
+import fa.dfa.DFAFile;
+
+/**
+ * Checks that every accepts entry point reads a lone "e" as the
+ * empty string, and an e inside a longer input as a char
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+class AcceptsTest
+{
+    @TempDir
+    Path dir;
+
+    /**
+     * @param emptyAccepted true if the empty string is accepted
+     * @return an NFA accepting "ee" over the class of 'e', and the
+     * empty string if emptyAccepted
+     */
+    private static NFA twoEs(boolean emptyAccepted)
+    {
+        NFA nfa = new NFA();
+        nfa.addStartState("0");
+        if(emptyAccepted)
+        {
+            nfa.addFinalState("0");
+        }
+        nfa.addState("1");
+        nfa.addFinalState("2");
+        nfa.addTransition("0", CharClass.of('e'), "1");
+        nfa.addTransition("1", CharClass.of('e'), "2");
+        return nfa;
+    }
+
+    private void assertAllAccept(NFA nfa, String input, boolean expected) throws IOException
+    {
+        assertEquals(expected, nfa.accepts(input), "NFA");
+        assertEquals(expected, nfa.snapshot().accepts(input), "NFASnapshot");
+        assertEquals(expected, nfa.getLazyDFA(1 << 20).accepts(input), "LazyDFA");
+        DFA dfa = nfa.getDFA();
+        assertEquals(expected, dfa.accepts(input), "DFA");
+        assertEquals(expected, dfa.snapshot().accepts(input), "DFASnapshot");
+        CompiledDFA compiled = dfa.compile();
+        assertEquals(expected, compiled.accepts(input), "CompiledDFA");
+        char[] padded = ("x" + input + "x").toCharArray();
+        assertEquals(expected, compiled.accepts(padded, 1, input.length()), "CompiledDFA slice");
+        assertEquals(expected, nfa.getOffHeapDFA().accepts(input), "OffHeapDFA");
+        Path file = dir.resolve("dfa.bin");
+        DFAFile.write(dfa, file);
+        assertEquals(expected, DFAFile.map(file).accepts(input), "MappedDFA");
+    }
+
+    @Test
+    void loneEIsTheEmptyString() throws IOException
+    {
+        assertAllAccept(twoEs(true), "e", true);
+        assertAllAccept(twoEs(false), "e", false);
+        assertAllAccept(twoEs(false), "", false);
+    }
+
+    @Test
+    void longerInputsReadEAsAChar() throws IOException
+    {
+        assertAllAccept(twoEs(false), "ee", true);
+        assertAllAccept(twoEs(true), "ee", true);
+        assertAllAccept(twoEs(true), "eee", false);
+    }
+}
@@ -0,0 +1,74 @@
+package fa.nfa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import fa.CharClass;
+import fa.dfa.DFAMatcher;
+
+/**
+ * Checks the counterexamples of the universality and inclusion checks
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+class AntichainsTest
+{
+    /**
+     * @param on the class read from the start
+     * @param accepted true if reading it leads to a final state
+     * @return an NFA accepting the empty string and, if accepted,
+     * the one char strings over on
+     */
+    private static NFA oneStep(CharClass on, boolean accepted)
+    {
+        NFA nfa = new NFA();
+        nfa.addStartState("0");
+        nfa.addFinalState("0");
+        if(accepted)
+        {
+            nfa.addFinalState("1");
+        }
+        else
+        {
+            nfa.addState("1");
+        }
+        nfa.addTransition("0", on, "1");
+        return nfa;
+    }
+
+    @Test
+    void counterexampleAvoidsE()
+    {
+        String w = oneStep(CharClass.range('e', 'f'), false).universalityWitness();
+        assertEquals("f", w);
+        assertFalse(oneStep(CharClass.range('e', 'f'), false).accepts(w));
+        assertEquals("f", oneStep(CharClass.range('e', 'f'), true).inclusionWitness(oneStep(CharClass.of('g'), true)));
+    }
+
+    @Test
+    void loneECounterexampleIsAChar()
+    {
+        NFA nfa = oneStep(CharClass.of('e'), false);
+        String w = nfa.universalityWitness();
+        assertEquals("e", w);
+        //accepts reads it as the empty string, a matcher as a char
+        assertTrue(nfa.accepts(w));
+        DFAMatcher m = nfa.getDFA().compile().matcher();
+        m.feed(w);
+        assertFalse(m.isAccepting());
+    }
+
+    @Test
+    void includedLanguageHasNoCounterexample()
+    {
+        NFA nfa = new NFA();
+        nfa.addStartState("0");
+        nfa.addFinalState("0");
+        nfa.addTransition("0", CharClass.range('a', 'z'), "0");
+        assertNull(nfa.universalityWitness());
+        assertNull(oneStep(CharClass.range('e', 'f'), true).inclusionWitness(nfa));
+    }
+}
@@ -0,0 +1,200 @@
+package fa.nfa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the matches of Searcher against a brute force search,
+ * and that texts where every offset starts or ends a match are
+ * searched in linear time.
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+class SearcherTest
+{
+    /** long enough that a quadratic search takes minutes */
+    private static final int LONG = 400_000;
+
+    /**
+     * @return an NFA for abcd|c
+     */
+    private static NFA abcdOrC()
+    {
+        NFA nfa = new NFA();
+        nfa.addStartState("0");
+        for(String s : new String[] {"1", "2", "3"})
+        {
+            nfa.addState(s);
+        }
+        nfa.addFinalState("4");
+        nfa.addFinalState("5");
+        nfa.addTransition("0", 'a', "1");
+        nfa.addTransition("1", 'b', "2");
+        nfa.addTransition("2", 'c', "3");
+        nfa.addTransition("3", 'd', "4");
+        nfa.addTransition("0", 'c', "5");
+        return nfa;
+    }
+
+    /**
+     * @return an NFA for a|a*b
+     */
+    private static NFA aOrStarB()
+    {
+        NFA nfa = new NFA();
+        nfa.addStartState("0");
+        nfa.addState("1");
+        nfa.addState("2");
+        nfa.addFinalState("3");
+        nfa.addTransition("0", 'e', "1");
+        nfa.addTransition("0", 'e', "2");
+        nfa.addTransition("1", 'a', "3");
+        nfa.addTransition("2", 'a', "2");
+        nfa.addTransition("2", 'b', "3");
+        return nfa;
+    }
+
+    /**
+     * @return an NFA for a*
+     */
+    private static NFA aStar()
+    {
+        NFA nfa = new NFA();
+        nfa.addStartState("0");
+        nfa.addFinalState("0");
+        nfa.addTransition("0", 'a', "0");
+        return nfa;
+    }
+
+    private static List<String> search(NFA nfa, String text, Searcher.Mode mode)
+    {
+        List<String> found = new ArrayList<>();
+        nfa.searcher().search(text, mode, (start, end) -> found.add("[" + start + "," + end + ")"));
+        return found;
+    }
+
+    private static boolean matches(NFA nfa, String text)
+    {
+        //accepts reads a lone e as the empty string, which is what is meant here too
+        return nfa.accepts(text.isEmpty() ? "e" : text);
+    }
+
+    private static List<String> bruteLongest(NFA nfa, String text)
+    {
+        List<String> found = new ArrayList<>();
+        int from = 0;
+        while(from <= text.length())
+        {
+            int start = -1;
+            int end = -1;
+            for(int s = from; s <= text.length() && start < 0; s++)
+            {
+                for(int e = text.length(); e >= s; e--)
+                {
+                    if(matches(nfa, text.substring(s, e)))
+                    {
+                        start = s;
+                        end = e;
+                        break;
+                    }
+                }
+            }
+            if(start < 0)
+            {
+                break;
+            }
+            found.add("[" + start + "," + end + ")");
+            from = end > start ? end : end + 1;
+        }
+        return found;
+    }
+
+    private static List<String> bruteEnds(NFA nfa, String text)
+    {
+        List<String> found = new ArrayList<>();
+        for(int e = 0; e <= text.length(); e++)
+        {
+            for(int s = 0; s <= e; s++)
+            {
+                if(matches(nfa, text.substring(s, e)))
+                {
+                    found.add("[" + s + "," + e + ")");
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Test
+    void longestMatchAtTheLeftmostStart()
+    {
+        assertEquals(List.of("[0,4)"), search(abcdOrC(), "abcd", Searcher.Mode.LEFTMOST_LONGEST));
+        assertEquals(List.of("[0,4)", "[6,7)"), search(abcdOrC(), "abcdabc", Searcher.Mode.LEFTMOST_LONGEST));
+        assertEquals(List.of("[0,4)"), search(aOrStarB(), "aaab", Searcher.Mode.LEFTMOST_LONGEST));
+    }
+
+    @Test
+    void leftmostStartOfEachEnd()
+    {
+        assertEquals(List.of("[0,4)"), search(abcdOrC(), "abcd", Searcher.Mode.ALL_ENDS).subList(1, 2));
+        assertEquals(List.of("[0,0)", "[0,1)", "[0,2)", "[3,3)", "[3,4)"), search(aStar(), "aaba", Searcher.Mode.ALL_ENDS));
+    }
+
+    @Test
+    void agreesWithBruteForce()
+    {
+        String[] texts = {"", "a", "b", "ab", "ba", "aab", "abcab", "aaaa", "abcdcabcdd", "xaabaxbab"};
+        for(NFA nfa : new NFA[] {abcdOrC(), aOrStarB(), aStar()})
+        {
+            for(String text : texts)
+            {
+                assertEquals(bruteLongest(nfa, text), search(nfa, text, Searcher.Mode.LEFTMOST_LONGEST), text);
+                assertEquals(bruteEnds(nfa, text), search(nfa, text, Searcher.Mode.ALL_ENDS), text);
+            }
+        }
+    }
+
+    @Test
+    void everyOffsetStartsAMatch()
+    {
+        String text = "a".repeat(LONG);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            long[] count = new long[1];
+            aOrStarB().searcher().search(text, Searcher.Mode.LEFTMOST_LONGEST, (start, end) -> {
+                assertEquals(start + 1, end);
+                count[0]++;
+                return true;
+            });
+            assertEquals(LONG, count[0]);
+        });
+    }
+
+    @Test
+    void everyEndStartsAtZero()
+    {
+        String text = "a".repeat(LONG);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            long[] count = new long[1];
+            aStar().searcher().search(text, Searcher.Mode.ALL_ENDS, (start, end) -> {
+                assertEquals(0, start);
+                count[0]++;
+                return true;
+            });
+            assertEquals(LONG + 1, count[0]);
+        });
+    }
+
+    @Test
+    void matchesSpanningSavedBlocks()
+    {
+        //the backward sweep saves its runs every 65536 offsets
+        String text = "x".repeat(65530) + "abcd" + "x".repeat(65536) + "c";
+        assertEquals(List.of("[65530,65534)", "[131070,131071)"), search(abcdOrC(), text, Searcher.Mode.LEFTMOST_LONGEST));
+    }
+}
@@ -0,0 +1,112 @@
+package fa.nfa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fa.dfa.CompiledDFA;
+import fa.dfa.DFAMatcher;
+import fa.dfa.IntDFA;
+
+/**
+ * Checks that the compiled, off-heap and spilling constructions send
+ * the transitions into subsets that cannot reach a final state to DEAD,
+ * and agree with each other on every other transition
+ * @author Sam Jackson and Jeremy Bouchard
+ */
+class SubsetConstructionTest
+{
+    @TempDir
+    Path spillDir;
+
+    /**
+     * @return an NFA for ab(a|b)*, whose DFA has a [] state
+     */
+    private static NFA abThenAny()
+    {
+        NFA nfa = new NFA();
+        nfa.addStartState("0");
+        nfa.addState("1");
+        nfa.addFinalState("2");
+        nfa.addTransition("0", 'a', "1");
+        nfa.addTransition("1", 'b', "2");
+        nfa.addTransition("2", 'a', "2");
+        nfa.addTransition("2", 'b', "2");
+        return nfa;
+    }
+
+    /**
+     * @return an NFA with no final state
+     */
+    private static NFA acceptsNothing()
+    {
+        NFA nfa = new NFA();
+        nfa.addStartState("0");
+        nfa.addState("1");
+        nfa.addTransition("0", 'a', "1");
+        return nfa;
+    }
+
+    private static void assertDeadAfter(IntDFA dfa, String input)
+    {
+        DFAMatcher m = dfa.matcher();
+        m.feed(input);
+        assertTrue(m.isDead(), input);
+        assertFalse(m.isAccepting(), input);
+    }
+
+    private static void assertSameTable(IntDFA expected, IntDFA actual)
+    {
+        assertEquals(expected.getStart(), actual.getStart());
+        assertEquals(expected.getStateCount(), actual.getStateCount());
+        assertEquals(expected.getAlphabetSize(), actual.getAlphabetSize());
+        for(int s = 0; s < expected.getStateCount(); s++)
+        {
+            assertEquals(expected.isFinal(s), actual.isFinal(s));
+            for(int c = 0; c < expected.getAlphabetSize(); c++)
+            {
+                char symb = expected.getSymbol(c);
+                assertEquals(expected.step(s, symb), actual.step(s, symb), s + " on " + symb);
+            }
+        }
+    }
+
+    @Test
+    void compiledGoesDead()
+    {
+        CompiledDFA dfa = abThenAny().getDFA().compile();
+        assertDeadAfter(dfa, "b");
+        assertDeadAfter(dfa, "aa");
+        DFAMatcher m = dfa.matcher();
+        m.feed("abba");
+        assertTrue(m.isAccepting());
+        assertEquals(IntDFA.DEAD, acceptsNothing().getDFA().compile().getStart());
+    }
+
+    @Test
+    void offHeapGoesDead()
+    {
+        IntDFA dfa = abThenAny().getOffHeapDFA();
+        assertDeadAfter(dfa, "b");
+        assertDeadAfter(dfa, "aa");
+        assertSameTable(abThenAny().getDFA().compile(), dfa);
+        assertEquals(IntDFA.DEAD, acceptsNothing().getOffHeapDFA().getStart());
+    }
+
+    @Test
+    void spillingGoesDead() throws IOException
+    {
+        //a ceiling of 0 spills at every MIN_SPILL subsets
+        IntDFA dfa = abThenAny().getOffHeapDFA(0, spillDir);
+        assertDeadAfter(dfa, "b");
+        assertDeadAfter(dfa, "aa");
+        assertSameTable(abThenAny().getDFA().compile(), dfa);
+        assertEquals(IntDFA.DEAD, acceptsNothing().getOffHeapDFA(0, spillDir).getStart());
+    }
+}